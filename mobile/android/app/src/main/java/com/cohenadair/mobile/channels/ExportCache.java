@@ -0,0 +1,93 @@
+package com.cohenadair.mobile.channels;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ExportCache keeps the last legacy export file, keyed by the
+ * {@link com.cohenadair.mobile.legacy.database.DatabaseFingerprint} of the database it was
+ * exported from and the options it was exported with. The legacy database isn't changed after
+ * the upgrade, so a later export with the same key, such as a retry after a failed import, can
+ * reuse the file rather than export the database again.
+ *
+ * The key, and the file's size and checksum, are stored next to the export file.
+ */
+class ExportCache {
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_OPTIONS = "options";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_CHECKSUM = "checksum";
+
+    private final File mFile;
+    private final File mKeyFile;
+
+    /**
+     * @param file The export file.
+     */
+    ExportCache(File file) {
+        mFile = file;
+        mKeyFile = new File(file.getPath() + ".key");
+    }
+
+    /**
+     * @return The cached export's path, size in bytes and CRC32 checksum, or null if there isn't
+     *         an export with the given key.
+     */
+    Map<String, Object> get(String fingerprint, String options) {
+        if (!mKeyFile.exists() || !mFile.exists())
+            return null;
+
+        try (RandomAccessFile in = new RandomAccessFile(mKeyFile, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            JSONObject key = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+
+            if (!fingerprint.equals(key.getString(KEY_FINGERPRINT))
+                    || !options.equals(key.getString(KEY_OPTIONS))
+                    || mFile.length() != key.getLong(KEY_SIZE))
+                return null;
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("file", mFile.getPath());
+            result.put("size", mFile.length());
+            result.put("checksum", key.getLong(KEY_CHECKSUM));
+            return result;
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Keys the current export file.
+     *
+     * @param checksum The export file's CRC32 checksum.
+     */
+    void put(String fingerprint, String options, long checksum) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(mKeyFile)) {
+            JSONObject key = new JSONObject();
+            key.put(KEY_FINGERPRINT, fingerprint);
+            key.put(KEY_OPTIONS, options);
+            key.put(KEY_SIZE, mFile.length());
+            key.put(KEY_CHECKSUM, checksum);
+            out.write(key.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Failed to write export key", e);
+        }
+    }
+
+    /**
+     * Deletes the export file and its key.
+     */
+    void clear() {
+        mKeyFile.delete();
+        mFile.delete();
+    }
+}
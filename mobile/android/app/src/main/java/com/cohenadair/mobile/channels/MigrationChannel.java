@@ -1,74 +1,380 @@
 package com.cohenadair.mobile.channels;
 
 import android.app.Activity;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Environment;
 import android.os.Handler;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.cohenadair.mobile.legacy.Logbook;
+import com.cohenadair.mobile.legacy.backup.ExportCheckpoint;
 import com.cohenadair.mobile.legacy.backup.JsonExporter;
+import com.cohenadair.mobile.legacy.database.DatabaseFingerprint;
+import com.cohenadair.mobile.legacy.database.ExportIndexes;
+import com.cohenadair.mobile.legacy.database.ReadSession;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
 public class MigrationChannel {
+    private static final String TAG = "MigrationChannel";
     private static final String CHANNEL_NAME = "com.cohenadair.anglerslog/migration";
+    private static final String STREAM_CHANNEL_NAME = "com.cohenadair.anglerslog/migration/stream";
     private static final String EXPORT_NAME = "legacyJson";
+    private static final String ACK_BATCH_NAME = "ackLegacyBatch";
+    private static final String ARG_STRING_DICTIONARY = "stringDictionary";
+    private static final String ARG_FILE = "file";
+    private static final String ARG_SCHEMA_VERSION = "schemaVersion";
+    private static final String ARG_BYTES = "bytes";
+    private static final String ARG_GZIP = "gzip";
+    private static final String ARG_PROTOBUF = "protobuf";
+
+    private static final String EXPORT_FILE_NAME = "legacy.json";
+    private static final String EXPORT_PARTIAL_FILE_NAME = "legacy.json.part";
+    private static final String EXPORT_CHECKPOINT_FILE_NAME = "legacy.json.checkpoint";
+
+    /**
+     * True while an export is running. JsonExporter's state is static, so a streamed export
+     * can't run at the same time as one requested through the method channel.
+     */
+    private static final AtomicBoolean sIsExporting = new AtomicBoolean();
+
+    /**
+     * The export options requested by the Dart side of the channel.
+     */
+    private static class ExportOptions {
+        final boolean useStringDictionary;
+        final boolean useFile;
+        final boolean useBytes;
+        final boolean useGzip;
+        final boolean useProtobuf;
+        final int schemaVersion;
+
+        ExportOptions(MethodCall call) {
+            useStringDictionary = Boolean.TRUE.equals(call.argument(ARG_STRING_DICTIONARY));
+            useFile = Boolean.TRUE.equals(call.argument(ARG_FILE));
+            useBytes = Boolean.TRUE.equals(call.argument(ARG_BYTES));
+            useGzip = useBytes && Boolean.TRUE.equals(call.argument(ARG_GZIP));
+            useProtobuf = Boolean.TRUE.equals(call.argument(ARG_PROTOBUF));
+
+            // older versions of the app don't send a schema version
+            Object version = call.argument(ARG_SCHEMA_VERSION);
+            schemaVersion = version instanceof Integer ? (Integer) version : JsonExporter.SCHEMA_V1;
+        }
+
+        /**
+         * @return The options that affect the contents of an export file.
+         * @see ExportCache
+         */
+        String getFileKey() {
+            return "schemaVersion=" + schemaVersion + ",stringDictionary=" + useStringDictionary
+                    + ",protobuf=" + useProtobuf;
+        }
+    }
 
     public static void create(@NonNull FlutterEngine flutterEngine, @NonNull Activity activity) {
+        MigrationStreamHandler streamHandler = new MigrationStreamHandler(activity);
+        new EventChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), STREAM_CHANNEL_NAME)
+                .setStreamHandler(streamHandler);
+
         new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL_NAME)
                 .setMethodCallHandler((call, result) -> {
                     if (call.method.equals(EXPORT_NAME)) {
-                        new Handler().post(() -> legacyJson(result, activity));
+                        ExportOptions options = new ExportOptions(call);
+                        // exports run one at a time on the main looper, since JsonExporter's
+                        // state is static
+                        new Handler().post(() -> legacyJson(result, activity, options));
+                    } else if (call.method.equals(ACK_BATCH_NAME)) {
+                        streamHandler.ack();
+                        result.success(null);
                     } else {
                         result.notImplemented();
                     }
                 });
     }
 
-    private static void legacyJson(MethodChannel.Result result, Activity activity) {
+    /**
+     * @return True if no other export is running, in which case {@link #endExport()} must be
+     *         called once this one is done.
+     */
+    static boolean beginExport() {
+        return sIsExporting.compareAndSet(false, true);
+    }
+
+    static void endExport() {
+        sIsExporting.set(false);
+    }
+
+    private static void legacyJson(MethodChannel.Result result, Activity activity, ExportOptions options) {
         final Map<String, Object> json;
+
+        if (!beginExport()) {
+            result.error("E", "A legacy export is already running", null);
+            return;
+        }
+
+        try {
+            json = exportLegacyJson(activity, options);
+        } catch (JSONException | IOException | RuntimeException e) {
+            // RuntimeExceptions include those rethrown from the export's workers, such as an
+            // SQLiteException when a read connection can't be opened
+            activity.runOnUiThread(() -> {
+                result.error("E", e.getMessage(), null);
+            });
+            return;
+        } finally {
+            SQLiteDatabase database = Logbook.getDatabase();
+            if (database != null && database.isOpen()) {
+                database.close();
+            }
+
+            endExport();
+        }
+
+        activity.runOnUiThread(() -> result.success(json));
+    }
+
+    /**
+     * Exports the old database, if there is one. The database is left open, and the caller is
+     * responsible for closing it.
+     *
+     * @return The result to send to the Dart side of the channel, or null if there is no old
+     *         database.
+     */
+    private static Map<String, Object> exportLegacyJson(Activity activity, ExportOptions options) throws JSONException, IOException {
         String oldDbPath = Logbook.init(activity);
         
         if (oldDbPath == null) {
-            // If there's no old database file, there's no legacy JSON to return.
-            json = null;
+            // If there's no old database file, there's no legacy JSON to return, and any export
+            // of it has already been imported.
+            deleteExportFiles(activity);
+            return null;
+        }
+
+        String oldImagesPath;
+        File oldImagesDir = activity.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        
+        if (oldImagesDir != null) {
+            oldImagesPath = oldImagesDir.getPath();
         } else {
-            String oldImagesPath;
-            File oldImagesDir = activity.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-            
-            if (oldImagesDir != null) {
-                oldImagesPath = oldImagesDir.getPath();
-            } else {
-                oldImagesPath = null;
+            oldImagesPath = null;
+        }
+
+        Map<String, Object> json = new HashMap<>();
+        json.put("db", oldDbPath);
+        json.put("img", oldImagesPath);
+
+        // the messages are small, so they're passed through the channel whichever way the JSON is
+        if (options.useProtobuf)
+            json.put("protobuf", JsonExporter.writeProtoMessages());
+
+        ExportCache cache = new ExportCache(new File(activity.getCacheDir(), EXPORT_FILE_NAME));
+
+        if (options.useFile) {
+            Map<String, Object> cached = cache.get(fingerprint(Logbook.getDatabase()), options.getFileKey());
+
+            if (cached != null) {
+                json.putAll(cached);
+                return json;
+            }
+
+            // the cached export, if any, is replaced by this one
+            cache.clear();
+        }
+        
+        // the indexes are only used for this export; the old database is deleted once its
+        // data is migrated
+        ExportIndexes indexes = ExportIndexes.create(Logbook.getDatabase());
+
+        try {
+            // taken once the indexes exist; an export that's killed leaves them behind, and
+            // create() reuses them without writing, so the fingerprint matches when it's resumed
+            String fingerprint = options.useFile ? fingerprint(Logbook.getDatabase()) : null;
+            ReadSession session = ReadSession.begin(Logbook.getDatabase());
+
+            try {
+                if (options.useFile) {
+                    json.putAll(writeJsonFile(activity, options, fingerprint));
+                } else if (options.useBytes) {
+                    json.putAll(writeJsonBytes(activity, options));
+                } else {
+                    StringWriter legacyJson = new StringWriter();
+                    JsonExporter.writeJson(activity, legacyJson, options.useStringDictionary, options.schemaVersion,
+                            options.useProtobuf, null, null);
+                    json.put("json", legacyJson.toString());
+                }
+            } finally {
+                session.end();
             }
-            
+        } finally {
+            indexes.drop();
+        }
+
+        // the export skips orphaned photos, so they're cleaned up afterwards rather than
+        // delaying it
+        Logbook.cleanDatabasePhotos();
+
+        if (options.useFile) {
+            // the fingerprint is taken once the export is done changing the database, so it
+            // matches the next export's
             try {
-                JSONObject legacyJson = JsonExporter.getJson(activity);
-                json = new HashMap<>();
-                json.put("db", oldDbPath);
-                json.put("img", oldImagesPath);
-                json.put("json", legacyJson.toString());
-            } catch (JSONException e) {
-                Logbook.getDatabase().close();
-                activity.runOnUiThread(() -> {
-                    result.error("E", e.getMessage(), null);
-                });
-                return;
+                cache.put(fingerprint(Logbook.getDatabase()), options.getFileKey(), (Long) json.get("checksum"));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to cache export: " + e.getMessage());
             }
         }
 
-        if (Logbook.getDatabase() != null) {
-            Logbook.getDatabase().close();
+        return json;
+    }
+
+    /**
+     * Checkpoints the WAL, if the database uses one, and returns the database's fingerprint.
+     *
+     * An export's fingerprint is taken before the database is closed, and the next export's
+     * after it's reopened. In WAL mode, closing the database checkpoints the writes made since
+     * the last checkpoint, such as dropping the export indexes, into the database file, which
+     * changes its fingerprint. Checkpointing first, which writes to the database file, means
+     * both fingerprints are taken with an empty WAL. The old database isn't used once its data is
+     * migrated, so moving the writes into it early is harmless.
+     *
+     * @see DatabaseFingerprint
+     */
+    static String fingerprint(SQLiteDatabase database) {
+        if ("wal".equalsIgnoreCase(DatabaseUtils.stringForQuery(database, "PRAGMA journal_mode", null))) {
+            // the pragma returns a row, so it has to be run as a query
+            try (Cursor cursor = database.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                cursor.moveToFirst();
+            }
+        }
+
+        return DatabaseFingerprint.of(database);
+    }
+
+    /**
+     * Writes the legacy JSON, UTF-8 encoded, to a file in the cache directory, so the document
+     * doesn't have to be passed through the channel.
+     *
+     * The export is written to a partial file, and its progress is checkpointed next to it as
+     * it's written. If the export is interrupted, such as by the app being killed, the next call
+     * resumes from the last checkpoint rather than starting over, as long as the database hasn't
+     * changed. The partial file replaces the export file once it's complete.
+     *
+     * @param fingerprint The fingerprint of the database being exported.
+     * @return The file's path, size in bytes and CRC32 checksum.
+     */
+    private static Map<String, Object> writeJsonFile(Activity activity, ExportOptions options, String fingerprint) throws JSONException, IOException {
+        File file = new File(activity.getCacheDir(), EXPORT_FILE_NAME);
+        File partialFile = new File(activity.getCacheDir(), EXPORT_PARTIAL_FILE_NAME);
+        File checkpointFile = new File(activity.getCacheDir(), EXPORT_CHECKPOINT_FILE_NAME);
+
+        CRC32 checksum = new CRC32();
+        ExportCheckpoint resumeFrom = ExportCheckpoint.resume(checkpointFile, partialFile, fingerprint,
+                options.useStringDictionary, options.schemaVersion, checksum);
+        long resumedLength = (resumeFrom == null) ? 0 : resumeFrom.getLength();
+
+        FileOutputStream fileOut = new FileOutputStream(partialFile, resumeFrom != null);
+        CountingOutputStream counter = new CountingOutputStream(new CheckedOutputStream(fileOut, checksum));
+
+        // if the export fails, the partial and checkpoint files are kept so it can be resumed
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8))) {
+            JsonExporter.writeJson(activity, writer, options.useStringDictionary, options.schemaVersion,
+                    options.useProtobuf, resumeFrom, checkpoint -> {
+                        // the exporter has already flushed the writer
+                        fileOut.getFD().sync();
+                        checkpoint.write(checkpointFile, resumedLength + counter.getCount(), fingerprint);
+                    });
+        }
+
+        if (!partialFile.renameTo(file))
+            throw new IOException("Failed to replace " + file.getPath());
+        checkpointFile.delete();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("file", file.getPath());
+        result.put("size", file.length());
+        result.put("checksum", checksum.getValue());
+        return result;
+    }
+
+    private static void deleteExportFiles(Activity activity) {
+        new ExportCache(new File(activity.getCacheDir(), EXPORT_FILE_NAME)).clear();
+        new File(activity.getCacheDir(), EXPORT_PARTIAL_FILE_NAME).delete();
+        new File(activity.getCacheDir(), EXPORT_CHECKPOINT_FILE_NAME).delete();
+    }
+
+    /**
+     * Writes the legacy JSON, UTF-8 encoded and optionally gzipped, to a byte array, so it's
+     * passed through the channel as is, rather than as a String that has to be re-encoded.
+     *
+     * @return The bytes, whether they're gzipped, and the size of the uncompressed JSON in bytes.
+     */
+    private static Map<String, Object> writeJsonBytes(Activity activity, ExportOptions options) throws JSONException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CountingOutputStream counter =
+                new CountingOutputStream(options.useGzip ? new GZIPOutputStream(bytes) : bytes);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8))) {
+            JsonExporter.writeJson(activity, writer, options.useStringDictionary, options.schemaVersion,
+                    options.useProtobuf, null, null);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("bytes", bytes.toByteArray());
+        result.put("gzip", options.useGzip);
+        result.put("size", counter.getCount());
+        return result;
+    }
+
+    /**
+     * Counts the bytes written to the wrapped stream.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
         }
-        activity.runOnUiThread(() -> result.success(json));
     }
 }
@@ -0,0 +1,148 @@
+package com.cohenadair.mobile.channels;
+
+import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Environment;
+
+import com.cohenadair.mobile.legacy.Logbook;
+import com.cohenadair.mobile.legacy.backup.JsonExporter;
+import com.cohenadair.mobile.legacy.database.ExportIndexes;
+import com.cohenadair.mobile.legacy.database.ReadSession;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Streams the legacy export to Dart in batches, so Dart can import each batch while the next one
+ * is read. Dart acknowledges each batch once it's been handled, and the export never runs more
+ * than MAX_BATCHES_AHEAD batches ahead of the last acknowledgement.
+ *
+ * Each event is a map with the batch's type and JSON string. The first event, a
+ * JsonExporter.BATCH_JOURNAL batch, also includes the old database and images paths. If there's
+ * no old database, the stream ends without any events.
+ *
+ * @see JsonExporter#writeBatches(android.content.Context, int, JsonExporter.OnBatch)
+ */
+class MigrationStreamHandler implements EventChannel.StreamHandler {
+    private static final String THREAD_NAME = "LegacyExport";
+    private static final String ARG_SCHEMA_VERSION = "schemaVersion";
+    private static final int MAX_BATCHES_AHEAD = 2;
+
+    private final Activity mActivity;
+
+    private Thread mThread;
+    private Semaphore mPermits;
+
+    MigrationStreamHandler(Activity activity) {
+        mActivity = activity;
+    }
+
+    /**
+     * Called when Dart has handled a batch, allowing another to be sent.
+     */
+    void ack() {
+        if (mPermits != null)
+            mPermits.release();
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        if (!MigrationChannel.beginExport()) {
+            events.error("E", "A legacy export is already running", null);
+            return;
+        }
+
+        // older versions of the app don't send a schema version
+        Object version = arguments instanceof Map ? ((Map<?, ?>) arguments).get(ARG_SCHEMA_VERSION) : null;
+        int schemaVersion = version instanceof Integer ? (Integer) version : JsonExporter.SCHEMA_V1;
+        Semaphore permits = new Semaphore(MAX_BATCHES_AHEAD);
+
+        mPermits = permits;
+        mThread = new Thread(() -> export(events, permits, schemaVersion), THREAD_NAME);
+        mThread.start();
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        // the export stops at its next batch, and cleans up after itself
+        if (mThread != null)
+            mThread.interrupt();
+
+        mThread = null;
+        mPermits = null;
+    }
+
+    private void export(EventChannel.EventSink events, Semaphore permits, int schemaVersion) {
+        try {
+            exportBatches(events, permits, schemaVersion);
+            mActivity.runOnUiThread(events::endOfStream);
+        } catch (InterruptedIOException e) {
+            // cancelled by Dart, so there's no one to send an error to
+        } catch (JSONException | IOException | RuntimeException e) {
+            mActivity.runOnUiThread(() -> events.error("E", e.getMessage(), null));
+        } finally {
+            SQLiteDatabase database = Logbook.getDatabase();
+            if (database != null && database.isOpen())
+                database.close();
+
+            MigrationChannel.endExport();
+        }
+    }
+
+    /**
+     * Sends each batch of the old database's export, if there is one. The database is left open,
+     * and the caller is responsible for closing it.
+     */
+    private void exportBatches(EventChannel.EventSink events, Semaphore permits, int schemaVersion) throws JSONException, IOException {
+        String oldDbPath = Logbook.init(mActivity);
+
+        // if there's no old database file, there's nothing to stream
+        if (oldDbPath == null)
+            return;
+
+        File oldImagesDir = mActivity.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        String oldImagesPath = oldImagesDir == null ? null : oldImagesDir.getPath();
+
+        ExportIndexes indexes = ExportIndexes.create(Logbook.getDatabase());
+
+        try {
+            ReadSession session = ReadSession.begin(Logbook.getDatabase());
+
+            try {
+                JsonExporter.writeBatches(mActivity, schemaVersion, (type, json) -> {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Legacy export cancelled");
+                    }
+
+                    Map<String, Object> event = new HashMap<>();
+                    event.put("type", type);
+                    event.put("json", json);
+
+                    if (type.equals(JsonExporter.BATCH_JOURNAL)) {
+                        event.put("db", oldDbPath);
+                        event.put("img", oldImagesPath);
+                    }
+
+                    mActivity.runOnUiThread(() -> events.success(event));
+                });
+            } finally {
+                session.end();
+            }
+        } finally {
+            indexes.drop();
+        }
+
+        // see MigrationChannel.exportLegacyJson
+        Logbook.cleanDatabasePhotos();
+    }
+}
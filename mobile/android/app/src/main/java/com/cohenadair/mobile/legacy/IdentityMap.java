@@ -0,0 +1,94 @@
+package com.cohenadair.mobile.legacy;
+
+import com.cohenadair.mobile.legacy.database.LogbookSchema.AnglerTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitCategoryTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingMethodTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.LocationTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.SpeciesTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.WaterClarityTable;
+import com.cohenadair.mobile.legacy.user_defines.FishingSpot;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * The IdentityMap is an in-memory copy of every user define in the {@link Logbook}, keyed by
+ * table and id. Each table is read with a single query, so that while the map is open, looking
+ * up a user define by id never touches the database, and every lookup of the same id returns the
+ * same instance.
+ *
+ * Instances are created with {@link Logbook#openIdentityMap()}, and should be released with
+ * {@link Logbook#closeIdentityMap()} as soon as they're no longer needed.
+ *
+ * @author Cohen Adair
+ */
+class IdentityMap {
+    private final HashMap<String, LinkedHashMap<String, UserDefineObject>> mTables = new HashMap<>();
+    private final HashMap<String, ArrayList<UserDefineObject>> mFishingSpotsByLocation = new HashMap<>();
+
+    /**
+     * Reads every user define table. Tables are loaded in dependency order, and each table is
+     * available as soon as it's read, so, for example, BaitCategory lookups made while loading
+     * baits are served by this map.
+     */
+    void load() {
+        put(SpeciesTable.NAME, Logbook.getSpecies());
+        put(BaitCategoryTable.NAME, Logbook.getBaitCategories());
+        put(BaitTable.NAME, Logbook.getBaits());
+        put(LocationTable.NAME, Logbook.getLocations());
+        put(FishingSpotTable.NAME, Logbook.getFishingSpots());
+        put(WaterClarityTable.NAME, Logbook.getWaterClarities());
+        put(FishingMethodTable.NAME, Logbook.getFishingMethods());
+        put(AnglerTable.NAME, Logbook.getAnglers());
+
+        for (UserDefineObject obj : mTables.get(FishingSpotTable.NAME).values()) {
+            String locationId = ((FishingSpot) obj).getLocationId().toString();
+            ArrayList<UserDefineObject> fishingSpots = mFishingSpotsByLocation.get(locationId);
+
+            if (fishingSpots == null) {
+                fishingSpots = new ArrayList<>();
+                mFishingSpotsByLocation.put(locationId, fishingSpots);
+            }
+
+            fishingSpots.add(obj);
+        }
+    }
+
+    void clear() {
+        mTables.clear();
+        mFishingSpotsByLocation.clear();
+    }
+
+    boolean isLoaded(String table) {
+        return mTables.containsKey(table);
+    }
+
+    UserDefineObject get(String table, String id) {
+        return mTables.get(table).get(id);
+    }
+
+    /**
+     * @return All objects in the given table, in the order they were queried.
+     */
+    ArrayList<UserDefineObject> getAll(String table) {
+        return new ArrayList<>(mTables.get(table).values());
+    }
+
+    ArrayList<UserDefineObject> getFishingSpots(String locationId) {
+        ArrayList<UserDefineObject> fishingSpots = mFishingSpotsByLocation.get(locationId);
+        return (fishingSpots == null) ? new ArrayList<>() : new ArrayList<>(fishingSpots);
+    }
+
+    private void put(String table, ArrayList<UserDefineObject> objs) {
+        LinkedHashMap<String, UserDefineObject> map = new LinkedHashMap<>();
+
+        for (UserDefineObject obj : objs)
+            map.put(obj.getIdAsString(), obj);
+
+        mTables.put(table, map);
+    }
+}
@@ -5,6 +5,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.cohenadair.mobile.legacy.database.LogbookHelper;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.AnglerTable;
@@ -17,8 +18,11 @@ import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingMethodTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.LocationTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.SpeciesTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.TripTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.WaterClarityTable;
 import com.cohenadair.mobile.legacy.database.QueryHelper;
+import com.cohenadair.mobile.legacy.database.UserDefineIterator;
 import com.cohenadair.mobile.legacy.database.cursors.AnglerCursor;
 import com.cohenadair.mobile.legacy.database.cursors.BaitCategoryCursor;
 import com.cohenadair.mobile.legacy.database.cursors.BaitCursor;
@@ -28,6 +32,7 @@ import com.cohenadair.mobile.legacy.database.cursors.FishingSpotCursor;
 import com.cohenadair.mobile.legacy.database.cursors.LocationCursor;
 import com.cohenadair.mobile.legacy.database.cursors.SpeciesCursor;
 import com.cohenadair.mobile.legacy.database.cursors.TripCursor;
+import com.cohenadair.mobile.legacy.database.cursors.UserDefineCursor;
 import com.cohenadair.mobile.legacy.database.cursors.WaterClarityCursor;
 import com.cohenadair.mobile.legacy.user_defines.Angler;
 import com.cohenadair.mobile.legacy.user_defines.Bait;
@@ -37,11 +42,15 @@ import com.cohenadair.mobile.legacy.user_defines.FishingMethod;
 import com.cohenadair.mobile.legacy.user_defines.FishingSpot;
 import com.cohenadair.mobile.legacy.user_defines.Location;
 import com.cohenadair.mobile.legacy.user_defines.Species;
+import com.cohenadair.mobile.legacy.user_defines.Trip;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
 import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
 import com.cohenadair.mobile.legacy.user_defines.WaterClarity;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 
 /**
  * The Logbook class is a static class storing all of the user's log data.
@@ -51,6 +60,8 @@ public class Logbook {
     private static final String TAG = "Logbook";
 
     private static SQLiteDatabase mDatabase;
+    private static IdentityMap sIdentityMap;
+    private static HashMap<String, Weather> sWeatherMap;
 
     private Logbook() { }
 
@@ -67,7 +78,6 @@ public class Logbook {
         mDatabase = database;
         mDatabase.setForeignKeyConstraintsEnabled(true);
         QueryHelper.setDatabase(mDatabase);
-        cleanDatabasePhotos();
     }
 
     //region Getters & Setters
@@ -80,54 +90,166 @@ public class Logbook {
     }
     //endregion
 
+    //region Identity Map
     /**
-     * Deletes all database entries for photos that aren't associated with any UserDefineObject
-     * instances.
+     * Reads every user define table into memory. Until {@link #closeIdentityMap()} is called,
+     * user define lookups are served from memory rather than the database. This should be used
+     * for operations that read the entire Logbook, such as exporting.
      */
-    private static void cleanDatabasePhotos() {
-        int numDeleted = mDatabase.delete(
-                CatchPhotoTable.NAME,
-                CatchPhotoTable.Columns.USER_DEFINE_ID + " NOT IN(SELECT " + CatchTable.Columns.ID + " FROM " + CatchTable.NAME + ")",
-                null
-        );
+    public static void openIdentityMap() {
+        closeIdentityMap();
+        sIdentityMap = new IdentityMap();
+        sIdentityMap.load();
+    }
 
-        numDeleted += mDatabase.delete(
-                BaitPhotoTable.NAME,
-                BaitPhotoTable.Columns.USER_DEFINE_ID + " NOT IN(SELECT " + BaitTable.Columns.ID + " FROM " + BaitTable.NAME + ")",
-                null
-        );
+    /**
+     * Releases the memory used by {@link #openIdentityMap()}. Safe to call if no identity map is
+     * open.
+     */
+    public static void closeIdentityMap() {
+        if (sIdentityMap != null) {
+            sIdentityMap.clear();
+            sIdentityMap = null;
+        }
+    }
+
+    private static boolean isMapped(String table) {
+        return sIdentityMap != null && sIdentityMap.isLoaded(table);
+    }
+
+    /**
+     * @param factory Creates the table's {@link UserDefineCursor} subclass, once per page.
+     * @param callbacks Gets the object from the cursor created by factory.
+     * @return A {@link UserDefineIterator} over every object in the given table, ordered by name.
+     */
+    private static UserDefineIterator iterateUserDefines(String table, QueryHelper.UserDefineCursorFactory factory, QueryHelper.UserDefineQueryInterface callbacks) {
+        if (isMapped(table))
+            return UserDefineIterator.of(sIdentityMap.getAll(table));
+        return new UserDefineIterator((last, limit) -> QueryHelper.queryUserDefinePage(table, last, limit, factory), callbacks);
+    }
+
+    /**
+     * @param factory Creates the table's {@link UserDefineCursor} subclass, once per query.
+     * @param callbacks Gets the object from the cursor created by factory.
+     */
+    private static ArrayList<UserDefineObject> getUserDefines(String table, QueryHelper.UserDefineCursorFactory factory, QueryHelper.UserDefineQueryInterface callbacks) {
+        if (isMapped(table))
+            return sIdentityMap.getAll(table);
+        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(table, null, null, factory), callbacks);
+    }
+
+    private static UserDefineObject getUserDefine(String table, String id, QueryHelper.UserDefineCursorFactory factory, QueryHelper.UserDefineQueryInterface callbacks) {
+        if (isMapped(table))
+            return sIdentityMap.get(table, id);
+        return QueryHelper.queryUserDefine(QueryHelper.queryUserDefines(table, UserDefineTable.Columns.ID + " = ?", new String[] { id }, factory), callbacks);
+    }
+    //endregion
+
+    /**
+     * Deletes photos from the database whose Catch or Bait no longer exists. This isn't done as
+     * part of {@link #init(Context)}, so it doesn't hold up reading the Logbook; it can be run
+     * after an export, or on a background thread. Exports skip orphaned photos on their own.
+     *
+     * @return The number of photos deleted, or 0 if the database is read-only.
+     */
+    public static int cleanDatabasePhotos() {
+        if (mDatabase.isReadOnly()) {
+            Log.i(TAG, "Database is read-only, skipping photo clean up.");
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+
+        int numDeleted = QueryHelper.deleteOrphanPhotos(CatchPhotoTable.NAME, CatchTable.NAME);
+        numDeleted += QueryHelper.deleteOrphanPhotos(BaitPhotoTable.NAME, BaitTable.NAME);
+
+        Log.i(TAG, "Deleted " + numDeleted + " unused photos from the database in "
+                + (System.currentTimeMillis() - start) + " ms.");
 
-        Log.i(TAG, "Deleted " + numDeleted + " unused photos from the database.");
+        return numDeleted;
     }
 
     //region Catch Manipulation
     public static ArrayList<UserDefineObject> getCatches() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryCatches(null, null), cursor -> new CatchCursor(cursor).getCatch());
+        return QueryHelper.queryUserDefines(queryCatches(null, null), getCatchQueryInterface());
+    }
+
+    /**
+     * Reads catches a page at a time, newest first. Catch dates are unique, so each page starts
+     * after the date of the previous page's last catch.
+     */
+    public static UserDefineIterator iterateCatches() {
+        return iterateCatches(null);
+    }
+
+    /**
+     * @param before If not null, only catches older than this date are read, such as when
+     *               resuming an export.
+     * @see #iterateCatches()
+     */
+    public static UserDefineIterator iterateCatches(@Nullable Date before) {
+        return new UserDefineIterator((last, limit) -> {
+            Date after = (last == null) ? before : ((Catch) last).getDate();
+            if (after == null)
+                return queryCatches(null, null, limit);
+            return queryCatches(CatchTable.NAME + "." + CatchTable.Columns.DATE + " < ?", new String[] { Long.toString(after.getTime()) }, limit);
+        }, getCatchQueryInterface());
     }
 
     public static Catch getCatch(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(CatchTable.NAME, CatchTable.Columns.ID, id, cursor -> new CatchCursor(cursor).getCatch());
+        UserDefineObject obj = QueryHelper.queryUserDefine(queryCatches(CatchTable.NAME + "." + CatchTable.Columns.ID + " = ?", new String[] { id }), getCatchQueryInterface());
         return (obj == null) ? null : (Catch)obj;
     }
+
+    /**
+     * When the identity map is open, a Catch's user defines are already in memory, so the
+     * joined query isn't needed.
+     */
+    private static CatchCursor queryCatches(String whereClause, String[] args) {
+        return queryCatches(whereClause, args, 0);
+    }
+
+    private static CatchCursor queryCatches(String whereClause, String[] args, int limit) {
+        if (sIdentityMap != null)
+            return QueryHelper.queryCatches(whereClause, args, limit);
+        return QueryHelper.queryCatchGraph(whereClause, args, limit);
+    }
+
+    /**
+     * Catches are always queried with a {@link CatchCursor} (or subclass), so the cursor doesn't
+     * need to be wrapped.
+     */
+    @NonNull
+    private static QueryHelper.UserDefineQueryInterface getCatchQueryInterface() {
+        return cursor -> ((CatchCursor) cursor).getCatch();
+    }
     //endregion
 
     //region Species Manipulation
     public static ArrayList<UserDefineObject> getSpecies() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(SpeciesTable.NAME, null, null), cursor -> new SpeciesCursor(cursor).getSpecies());
+        return getUserDefines(SpeciesTable.NAME, SpeciesCursor::new, cursor -> ((SpeciesCursor) cursor).getSpecies());
+    }
+
+    public static UserDefineIterator iterateSpecies() {
+        return iterateUserDefines(SpeciesTable.NAME, SpeciesCursor::new, cursor -> ((SpeciesCursor) cursor).getSpecies());
     }
 
     public static Species getSpecies(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(SpeciesTable.NAME, SpeciesTable.Columns.ID, id, cursor -> new SpeciesCursor(cursor).getSpecies());
+        UserDefineObject obj = getUserDefine(SpeciesTable.NAME, id, SpeciesCursor::new, cursor -> ((SpeciesCursor) cursor).getSpecies());
         return (obj == null) ? null : (Species)obj;
     }
 
     //region BaitCategory Manipulation
     public static ArrayList<UserDefineObject> getBaitCategories() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(BaitCategoryTable.NAME, null, null), cursor -> new BaitCategoryCursor(cursor).getBaitCategory());
+        return getUserDefines(BaitCategoryTable.NAME, BaitCategoryCursor::new, cursor -> ((BaitCategoryCursor) cursor).getBaitCategory());
+    }
+
+    public static UserDefineIterator iterateBaitCategories() {
+        return iterateUserDefines(BaitCategoryTable.NAME, BaitCategoryCursor::new, cursor -> ((BaitCategoryCursor) cursor).getBaitCategory());
     }
 
     public static BaitCategory getBaitCategory(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(BaitCategoryTable.NAME, BaitCategoryTable.Columns.ID, id, cursor -> new BaitCategoryCursor(cursor).getBaitCategory());
+        UserDefineObject obj = getUserDefine(BaitCategoryTable.NAME, id, BaitCategoryCursor::new, cursor -> ((BaitCategoryCursor) cursor).getBaitCategory());
         return (obj == null) ? null : (BaitCategory)obj;
     }
     //endregion
@@ -138,17 +260,23 @@ public class Logbook {
      * @return An ArrayList of {@link Bait} objects matching the WHERE clause.
      */
     public static ArrayList<UserDefineObject> getBaits() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryBaits("", null), cursor -> new BaitCursor(cursor).getBait());
+        if (isMapped(BaitTable.NAME))
+            return sIdentityMap.getAll(BaitTable.NAME);
+        return QueryHelper.queryUserDefines(QueryHelper.queryBaits("", null), getBaitQueryInterface());
+    }
+
+    public static UserDefineIterator iterateBaits() {
+        return iterateUserDefines(BaitTable.NAME, BaitCursor::new, getBaitQueryInterface());
     }
 
     public static Bait getBait(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(BaitTable.NAME, BaitTable.Columns.ID, id, getBaitQueryInterface());
+        UserDefineObject obj = getUserDefine(BaitTable.NAME, id, BaitCursor::new, getBaitQueryInterface());
         return baitOrNull(obj);
     }
 
     @NonNull
     private static QueryHelper.UserDefineQueryInterface getBaitQueryInterface() {
-        return cursor -> new BaitCursor(cursor).getBait();
+        return cursor -> ((BaitCursor) cursor).getBait();
     }
 
     private static Bait baitOrNull(UserDefineObject obj) {
@@ -158,22 +286,47 @@ public class Logbook {
 
     //region Location Manipulation
     public static ArrayList<UserDefineObject> getLocations() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(LocationTable.NAME, null, null), cursor -> new LocationCursor(cursor).getLocation());
+        return getUserDefines(LocationTable.NAME, LocationCursor::new, cursor -> ((LocationCursor) cursor).getLocation());
+    }
+
+    public static UserDefineIterator iterateLocations() {
+        return iterateUserDefines(LocationTable.NAME, LocationCursor::new, cursor -> ((LocationCursor) cursor).getLocation());
     }
 
     public static Location getLocation(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(LocationTable.NAME, LocationTable.Columns.ID, id, cursor -> new LocationCursor(cursor).getLocation());
+        UserDefineObject obj = getUserDefine(LocationTable.NAME, id, LocationCursor::new, cursor -> ((LocationCursor) cursor).getLocation());
         return (obj == null) ? null : (Location)obj;
     }
 
+    public static ArrayList<UserDefineObject> getFishingSpots() {
+        return getUserDefines(FishingSpotTable.NAME, FishingSpotCursor::new, getFishingSpotQueryInterface());
+    }
+
+    public static UserDefineIterator iterateFishingSpots() {
+        return iterateUserDefines(FishingSpotTable.NAME, FishingSpotCursor::new, getFishingSpotQueryInterface());
+    }
+
+    /**
+     * @return All {@link FishingSpot} objects belonging to the given {@link Location} id.
+     */
+    public static ArrayList<UserDefineObject> getFishingSpots(String locationId) {
+        if (isMapped(FishingSpotTable.NAME))
+            return sIdentityMap.getFishingSpots(locationId);
+
+        return QueryHelper.queryUserDefines(
+                QueryHelper.queryUserDefines(FishingSpotTable.NAME, FishingSpotTable.Columns.LOCATION_ID + " = ?", new String[] { locationId }, FishingSpotCursor::new),
+                getFishingSpotQueryInterface()
+        );
+    }
+
     public static FishingSpot getFishingSpot(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(FishingSpotTable.NAME, FishingSpotTable.Columns.ID, id, getFishingSpotQueryInterface());
+        UserDefineObject obj = getUserDefine(FishingSpotTable.NAME, id, FishingSpotCursor::new, getFishingSpotQueryInterface());
         return fishingSpotOrNull(obj);
     }
 
     @NonNull
     private static QueryHelper.UserDefineQueryInterface getFishingSpotQueryInterface() {
-        return cursor -> new FishingSpotCursor(cursor).getFishingSpot();
+        return cursor -> ((FishingSpotCursor) cursor).getFishingSpot();
     }
 
     private static FishingSpot fishingSpotOrNull(UserDefineObject obj) {
@@ -183,40 +336,84 @@ public class Logbook {
 
     //region WaterClarity Manipulation
     public static ArrayList<UserDefineObject> getWaterClarities() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(WaterClarityTable.NAME, null, null), cursor -> new WaterClarityCursor(cursor).getWaterClarity());
+        return getUserDefines(WaterClarityTable.NAME, WaterClarityCursor::new, cursor -> ((WaterClarityCursor) cursor).getWaterClarity());
+    }
+
+    public static UserDefineIterator iterateWaterClarities() {
+        return iterateUserDefines(WaterClarityTable.NAME, WaterClarityCursor::new, cursor -> ((WaterClarityCursor) cursor).getWaterClarity());
     }
 
     public static WaterClarity getWaterClarity(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(WaterClarityTable.NAME, WaterClarityTable.Columns.ID, id, cursor -> new WaterClarityCursor(cursor).getWaterClarity());
+        UserDefineObject obj = getUserDefine(WaterClarityTable.NAME, id, WaterClarityCursor::new, cursor -> ((WaterClarityCursor) cursor).getWaterClarity());
         return (obj == null) ? null : (WaterClarity)obj;
     }
     //endregion
 
     //region FishingMethod Manipulation
     public static ArrayList<UserDefineObject> getFishingMethods() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(FishingMethodTable.NAME, null, null), cursor -> new FishingMethodCursor(cursor).getFishingMethod());
+        return getUserDefines(FishingMethodTable.NAME, FishingMethodCursor::new, cursor -> ((FishingMethodCursor) cursor).getFishingMethod());
+    }
+
+    public static UserDefineIterator iterateFishingMethods() {
+        return iterateUserDefines(FishingMethodTable.NAME, FishingMethodCursor::new, cursor -> ((FishingMethodCursor) cursor).getFishingMethod());
     }
 
     public static FishingMethod getFishingMethod(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(FishingMethodTable.NAME, FishingMethodTable.Columns.ID, id, cursor -> new FishingMethodCursor(cursor).getFishingMethod());
+        UserDefineObject obj = getUserDefine(FishingMethodTable.NAME, id, FishingMethodCursor::new, cursor -> ((FishingMethodCursor) cursor).getFishingMethod());
         return (obj == null) ? null : (FishingMethod)obj;
     }
     //endregion
 
     //region Angler Manipulation
     public static ArrayList<UserDefineObject> getAnglers() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryUserDefines(AnglerTable.NAME, null, null), cursor -> new AnglerCursor(cursor).getAngler());
+        return getUserDefines(AnglerTable.NAME, AnglerCursor::new, cursor -> ((AnglerCursor) cursor).getAngler());
+    }
+
+    public static UserDefineIterator iterateAnglers() {
+        return iterateUserDefines(AnglerTable.NAME, AnglerCursor::new, cursor -> ((AnglerCursor) cursor).getAngler());
     }
 
     public static Angler getAngler(String id) {
-        UserDefineObject obj = QueryHelper.queryUserDefine(AnglerTable.NAME, AnglerTable.Columns.ID, id, cursor -> new AnglerCursor(cursor).getAngler());
+        UserDefineObject obj = getUserDefine(AnglerTable.NAME, id, AnglerCursor::new, cursor -> ((AnglerCursor) cursor).getAngler());
         return (obj == null) ? null : (Angler)obj;
     }
     //endregion
 
+    //region Weather Manipulation
+    /**
+     * Reads the weather data of every catch into memory. Until {@link #closeWeatherMap()} is
+     * called, {@link #getWeather(UserDefineId)} doesn't query the database.
+     */
+    public static void openWeatherMap() {
+        sWeatherMap = QueryHelper.queryWeather();
+    }
+
+    public static void closeWeatherMap() {
+        sWeatherMap = null;
+    }
+
+    public static Weather getWeather(UserDefineId catchId) {
+        if (sWeatherMap != null)
+            return sWeatherMap.get(catchId.toString());
+        return QueryHelper.queryWeather(catchId);
+    }
+    //endregion
+
     //region Trip Manipulation
     public static ArrayList<UserDefineObject> getTrips() {
-        return QueryHelper.queryUserDefines(QueryHelper.queryTrips(null, null), cursor -> new TripCursor(cursor).getTrip());
+        return QueryHelper.queryUserDefines(QueryHelper.queryTrips(null, null), cursor -> ((TripCursor) cursor).getTrip());
+    }
+
+    /**
+     * Reads trips a page at a time, newest first. Trip start dates are unique, so each page
+     * starts after the start date of the previous page's last trip.
+     */
+    public static UserDefineIterator iterateTrips() {
+        return new UserDefineIterator((last, limit) -> {
+            if (last == null)
+                return QueryHelper.queryTrips(null, null, limit);
+            return QueryHelper.queryTrips(TripTable.Columns.START_DATE + " < ?", new String[] { Long.toString(((Trip) last).getStartDate().getTime()) }, limit);
+        }, cursor -> ((TripCursor) cursor).getTrip());
     }
     //endregion
 }
@@ -0,0 +1,50 @@
+package com.cohenadair.mobile.legacy;
+
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedAnglerTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedCatchTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedFishingMethodTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedLocationTable;
+import com.cohenadair.mobile.legacy.database.QueryHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The UsedUserDefineMap is an in-memory copy of every "Used*" table, each read with a single
+ * query into a map of super id to child ids. It lets {@link UsedUserDefineObject} get the
+ * children of any object without a query, so reading the used objects of every Catch and Trip
+ * takes the same number of queries regardless of how many there are.
+ *
+ * @see UsedUserDefineObject#openMap()
+ * @author Cohen Adair
+ */
+class UsedUserDefineMap {
+    private final HashMap<String, HashMap<String, ArrayList<String>>> mTables = new HashMap<>();
+
+    void load() {
+        put(UsedFishingMethodTable.NAME, UsedFishingMethodTable.Columns.CATCH_ID, UsedFishingMethodTable.Columns.FISHING_METHOD_ID);
+        put(UsedAnglerTable.NAME, UsedAnglerTable.Columns.TRIP_ID, UsedAnglerTable.Columns.ANGLER_ID);
+        put(UsedLocationTable.NAME, UsedLocationTable.Columns.TRIP_ID, UsedLocationTable.Columns.LOCATION_ID);
+        put(UsedCatchTable.NAME, UsedCatchTable.Columns.TRIP_ID, UsedCatchTable.Columns.CATCH_ID);
+    }
+
+    void clear() {
+        mTables.clear();
+    }
+
+    boolean isLoaded(String table) {
+        return mTables.containsKey(table);
+    }
+
+    /**
+     * @return The child ids of the given super id, in database order. Empty if there are none.
+     */
+    ArrayList<String> get(String table, String superId) {
+        ArrayList<String> ids = mTables.get(table).get(superId);
+        return (ids == null) ? new ArrayList<>() : ids;
+    }
+
+    private void put(String table, String superColumn, String childColumn) {
+        mTables.put(table, QueryHelper.queryUsedIds(table, superColumn, childColumn));
+    }
+}
@@ -2,10 +2,10 @@ package com.cohenadair.mobile.legacy;
 
 import com.cohenadair.mobile.legacy.database.QueryHelper;
 import com.cohenadair.mobile.legacy.user_defines.FishingMethod;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
 import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
 
 import java.util.ArrayList;
-import java.util.UUID;
 
 /**
  * The UsedUserDefineObject is a utility class used to interact with the database for
@@ -19,19 +19,60 @@ import java.util.UUID;
  * @author Cohen Adair
  */
 public class UsedUserDefineObject {
-    private final UUID mSuperId; // the id of the UserDefineObject this object belongs to
+    private static UsedUserDefineMap sMap;
+
+    private final UserDefineId mSuperId; // the id of the UserDefineObject this object belongs to
     private final String mTable;
     private final String mSuperColumnId;
     private final String mChildColumnId;
 
-    public UsedUserDefineObject(UUID superId, String table, String superColumnId, String childColumnId) {
+    public UsedUserDefineObject(UserDefineId superId, String table, String superColumnId, String childColumnId) {
         mSuperId = superId;
         mTable = table;
         mSuperColumnId = superColumnId;
         mChildColumnId = childColumnId;
     }
 
+    /**
+     * Reads every "Used*" table into memory. Until {@link #closeMap()} is called,
+     * {@link #getObjects(QueryHelper.UsedQueryCallbacks)} doesn't query the database for child
+     * ids. This should be used for operations that read the entire Logbook, such as exporting.
+     */
+    public static void openMap() {
+        closeMap();
+        sMap = new UsedUserDefineMap();
+        sMap.load();
+    }
+
+    /**
+     * Releases the memory used by {@link #openMap()}. Safe to call if no map is open.
+     */
+    public static void closeMap() {
+        if (sMap != null) {
+            sMap.clear();
+            sMap = null;
+        }
+    }
+
+    /**
+     * @return The ids of the used objects, without reading the objects themselves.
+     */
+    public ArrayList<String> getIds() {
+        if (sMap != null && sMap.isLoaded(mTable))
+            return new ArrayList<>(sMap.get(mTable, mSuperId.toString()));
+        return QueryHelper.queryUsedIds(mTable, mChildColumnId, mSuperColumnId, mSuperId);
+    }
+
     public ArrayList<UserDefineObject> getObjects(QueryHelper.UsedQueryCallbacks callbacks) {
+        if (sMap != null && sMap.isLoaded(mTable)) {
+            ArrayList<UserDefineObject> objs = new ArrayList<>();
+
+            for (String id : sMap.get(mTable, mSuperId.toString()))
+                objs.add(callbacks.getFromLogbook(id));
+
+            return objs;
+        }
+
         return QueryHelper.queryUsedUserDefineObject(mTable, mChildColumnId, mSuperColumnId, mSuperId, callbacks);
     }
 }
@@ -29,11 +29,12 @@ public class Weather {
         JSONObject json = new JSONObject();
 
         // for iOS compatibility (used for Core Data)
-        json.put(Json.ENTRY, JsonExporter.dateToString(aCatch.getDate()));
+        if (!JsonExporter.isCompact())
+            json.put(Json.ENTRY, aCatch.getDateJsonString());
 
         json.put(Json.TEMPERATURE, mTemperature);
         json.put(Json.WIND_SPEED, mWindSpeed);
-        json.put(Json.SKY_CONDITIONS, mSkyConditions);
+        JsonExporter.putString(json, Json.SKY_CONDITIONS, mSkyConditions);
 
         return json;
     }
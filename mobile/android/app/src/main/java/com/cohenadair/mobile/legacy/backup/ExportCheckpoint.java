@@ -0,0 +1,228 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.Checksum;
+
+/**
+ * An ExportCheckpoint is a point at which {@link JsonExporter#writeJson(android.content.Context, java.io.Writer, boolean, int, boolean, ExportCheckpoint, JsonExporter.OnCheckpoint)}
+ * can resume writing an export, such as after the app is killed halfway through one. It
+ * includes the section being written, the date of the last catch written (catches are written
+ * newest first), the state of the {@link JsonStreamWriter} and the {@link StringDictionary}
+ * built so far.
+ *
+ * The checkpoint itself doesn't know where the export is written, or what it's exported from.
+ * Whoever stores it also stores the length of the output at the checkpoint, so output written
+ * after it can be discarded, and the
+ * {@link com.cohenadair.mobile.legacy.database.DatabaseFingerprint} of the database being
+ * exported, so an export isn't resumed once the database has changed.
+ *
+ * @author Cohen Adair
+ */
+public class ExportCheckpoint {
+    /**
+     * Trips have been written, and Json.ENTRIES is open.
+     */
+    public static final int SECTION_ENTRIES = 1;
+
+    /**
+     * Json.ENTRIES has been written and closed.
+     */
+    public static final int SECTION_USER_DEFINES = 2;
+
+    private static final String KEY_SECTION = "section";
+    private static final String KEY_LAST_CATCH_DATE = "lastCatchDate";
+    private static final String KEY_NESTING = "nesting";
+    private static final String KEY_SCHEMA_VERSION = "schemaVersion";
+    private static final String KEY_STRINGS = "strings";
+    private static final String KEY_STRING_KEYS = "stringKeys";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+
+    private static final int RESUME_BUFFER_SIZE = 64 * 1024;
+
+    private final int mSection;
+    private final Date mLastCatchDate;
+    private final String mNesting;
+    private final int mSchemaVersion;
+    private final StringDictionary mStringDictionary;
+    private long mLength;
+    private String mFingerprint;
+
+    ExportCheckpoint(int section, @Nullable Date lastCatchDate, String nesting, int schemaVersion, @Nullable StringDictionary dictionary) {
+        mSection = section;
+        mLastCatchDate = lastCatchDate;
+        mNesting = nesting;
+        mSchemaVersion = schemaVersion;
+        mStringDictionary = dictionary;
+    }
+
+    /**
+     * @return The checkpoint stored in the given file, or null if there isn't one, or it can't be
+     *         read.
+     */
+    @Nullable
+    public static ExportCheckpoint read(File file) {
+        if (!file.exists())
+            return null;
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+
+            JSONObject json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+            StringDictionary dictionary = json.has(KEY_STRINGS)
+                    ? new StringDictionary(json.getJSONArray(KEY_STRINGS), json.getJSONArray(KEY_STRING_KEYS))
+                    : null;
+
+            ExportCheckpoint result = new ExportCheckpoint(
+                    json.getInt(KEY_SECTION),
+                    json.has(KEY_LAST_CATCH_DATE) ? new Date(json.getLong(KEY_LAST_CATCH_DATE)) : null,
+                    json.getString(KEY_NESTING),
+                    json.getInt(KEY_SCHEMA_VERSION),
+                    dictionary);
+            result.mLength = json.getLong(KEY_LENGTH);
+            result.mFingerprint = json.getString(KEY_FINGERPRINT);
+
+            return result;
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param checkpointFile The file the interrupted export's checkpoint was written to.
+     * @param output The interrupted export's output.
+     * @param fingerprint The fingerprint of the database being exported.
+     * @return The checkpoint of an interrupted export that can be resumed with the given
+     *         database and options, or null if there isn't one, in which case checkpointFile is
+     *         deleted. If there is, output is truncated to the checkpoint, and checksum is updated
+     *         with its contents.
+     */
+    @Nullable
+    public static ExportCheckpoint resume(File checkpointFile, File output, String fingerprint,
+                                          boolean useStringDictionary, int schemaVersion, Checksum checksum) throws IOException {
+        ExportCheckpoint checkpoint = read(checkpointFile);
+
+        if (checkpoint == null
+                || !checkpoint.isCompatible(fingerprint, useStringDictionary, schemaVersion)
+                || output.length() < checkpoint.getLength()) {
+            checkpointFile.delete();
+            return null;
+        }
+
+        try (RandomAccessFile partial = new RandomAccessFile(output, "rw")) {
+            // anything written after the checkpoint is discarded, and written again
+            partial.setLength(checkpoint.getLength());
+
+            byte[] buffer = new byte[RESUME_BUFFER_SIZE];
+            for (int read = partial.read(buffer); read != -1; read = partial.read(buffer))
+                checksum.update(buffer, 0, read);
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Stores this checkpoint in the given file. The checkpoint is written to a temporary file
+     * and synced before it replaces the old one, so the given file always holds a complete
+     * checkpoint.
+     *
+     * @param length The length of the output written before this checkpoint. The output must
+     *               already be synced.
+     * @param fingerprint The fingerprint of the database being exported.
+     */
+    public void write(File file, long length, String fingerprint) throws IOException {
+        mLength = length;
+        mFingerprint = fingerprint;
+
+        JSONObject json = new JSONObject();
+        byte[] bytes;
+
+        try {
+            json.put(KEY_SECTION, mSection);
+            if (mLastCatchDate != null)
+                json.put(KEY_LAST_CATCH_DATE, mLastCatchDate.getTime());
+            json.put(KEY_NESTING, mNesting);
+            json.put(KEY_SCHEMA_VERSION, mSchemaVersion);
+            if (mStringDictionary != null) {
+                json.put(KEY_STRINGS, mStringDictionary.getStrings());
+                json.put(KEY_STRING_KEYS, mStringDictionary.getKeys());
+            }
+            json.put(KEY_LENGTH, mLength);
+            json.put(KEY_FINGERPRINT, mFingerprint);
+            bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        } catch (JSONException e) {
+            throw new IOException("Failed to write checkpoint", e);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+
+        if (!tmp.renameTo(file))
+            throw new IOException("Failed to replace " + file.getPath());
+    }
+
+    /**
+     * @return True if an export of the database with the given fingerprint, with the given
+     *         options, can resume from this checkpoint.
+     */
+    public boolean isCompatible(String fingerprint, boolean useStringDictionary, int schemaVersion) {
+        return fingerprint.equals(mFingerprint)
+                && (mStringDictionary != null) == useStringDictionary
+                && mSchemaVersion == schemaVersion;
+    }
+
+    public int getSection() {
+        return mSection;
+    }
+
+    /**
+     * @return The date of the last catch written, or null if none were written.
+     */
+    @Nullable
+    public Date getLastCatchDate() {
+        return mLastCatchDate;
+    }
+
+    /**
+     * @see JsonStreamWriter#getNesting()
+     */
+    @NonNull
+    public String getNesting() {
+        return mNesting;
+    }
+
+    @Nullable
+    public StringDictionary getStringDictionary() {
+        return mStringDictionary;
+    }
+
+    /**
+     * @return The length of the output written before this checkpoint.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return The fingerprint of the database the checkpointed export is of.
+     */
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+}
@@ -15,6 +15,9 @@ public class Json {
     public static final String TRIPS = "trips";
     public static final String MEASUREMENT_SYSTEM = "measurementSystem";
     public static final String WEATHER_MEASUREMENT_SYSTEM = "weatherMeasurementSystem";
+    public static final String STRINGS = "strings";
+    public static final String STRING_KEYS = "stringKeys";
+    public static final String SCHEMA_VERSION = "schemaVersion";
 
     public static final String START_DATE = "startDate";
     public static final String END_DATE = "endDate";
@@ -32,6 +35,7 @@ public class Json {
     public static final String FISHING_METHOD_NAMES = "fishingMethodNames";
     public static final String LOCATION = "location";
     public static final String FISHING_SPOT = "fishingSpot";
+    public static final String FISHING_SPOT_ID = "fishingSpotId";
     public static final String WEATHER_DATA = "weatherData";
     public static final String WATER_TEMPERATURE = "waterTemperature";
     public static final String WATER_CLARITY = "waterClarity";
@@ -3,25 +3,55 @@ package com.cohenadair.mobile.legacy.backup;
 import static com.cohenadair.anglerslog.utilities.LogbookPreferences.*;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.cohenadair.mobile.legacy.Logbook;
+import com.cohenadair.mobile.legacy.UsedUserDefineObject;
+import com.cohenadair.mobile.legacy.database.QueryHelper;
+import com.cohenadair.mobile.legacy.database.ReadSession;
+import com.cohenadair.mobile.legacy.database.UserDefineIterator;
+import com.cohenadair.mobile.legacy.user_defines.Catch;
+import com.cohenadair.mobile.legacy.user_defines.PhotoUserDefineObject;
 import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.SimpleDateFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The JsonExporter class is used to create a JSONObject of the user's {@link Logbook}.
  * @author Cohen Adair
  */
 public class JsonExporter {
+    private static final String TAG = "JsonExporter";
+
     /**
      * An interface to be used on different {@link UserDefineObject} subclasses.
      */
@@ -30,20 +60,483 @@ public class JsonExporter {
     }
 
     /**
-     * Returns a {@link JSONObject} representation of the current {@link Logbook}.
-     * @throws JSONException Throws a JSONException if the object could not be  constructed.
+     * Supplies the iterator of a section, so it can be read on any thread.
+     */
+    private interface IteratorSupplier {
+        UserDefineIterator get();
+    }
+
+    /**
+     * An interface used to store an export's progress, so it can be resumed.
+     * @see #writeJson(Context, Writer, boolean, int, boolean, ExportCheckpoint, OnCheckpoint)
+     */
+    public interface OnCheckpoint {
+        /**
+         * Called once everything written so far has been flushed to the export's writer.
+         */
+        void onCheckpoint(ExportCheckpoint checkpoint) throws IOException;
+    }
+
+    /**
+     * An interface used to receive the export in batches.
+     * @see #writeBatches(Context, int, OnBatch)
+     */
+    public interface OnBatch {
+        /**
+         * @param type One of the BATCH_* constants.
+         * @param json The batch's JSON string.
+         */
+        void onBatch(String type, String json) throws IOException;
+    }
+
+    /**
+     * Batch types, in the order they're written. Trips are written before catches, so an importer
+     * can count each trip's catches as they arrive, rather than looking them up afterwards.
      */
-    public static JSONObject getJson(Context context) throws JSONException {
-        JSONObject json = new JSONObject();
+    public static final String BATCH_JOURNAL = "journal";
+    public static final String BATCH_USER_DEFINES = "userDefines";
+    public static final String BATCH_TRIPS = "trips";
+    public static final String BATCH_ENTRIES = "entries";
 
-        json.put(Json.NAME, Logbook.getName());
-        json.put(Json.TRIPS, getJsonArray(Logbook.getTrips()));
-        json.put(Json.ENTRIES, getJsonArray(Logbook.getCatches()));
-        json.put(Json.USER_DEFINES, getUserDefinesJson());
-        json.put(Json.MEASUREMENT_SYSTEM, getUnits(context));
-        json.put(Json.WEATHER_MEASUREMENT_SYSTEM, getWeatherUnits(context));
+    /**
+     * The user defines returned by {@link #writeProtoMessages()}. Each is an ID and a name, the same
+     * as its anglerslog.proto message.
+     */
+    public static final String PROTO_ANGLERS = "anglers";
+    public static final String PROTO_BAIT_CATEGORIES = "baitCategories";
+    public static final String PROTO_METHODS = "methods";
+    public static final String PROTO_SPECIES = "species";
+    public static final String PROTO_WATER_CLARITIES = "waterClarities";
+
+    // field numbers of the Id message, and of the Angler, BaitCategory, Method, Species and
+    // WaterClarity messages, in anglerslog.proto
+    private static final int FIELD_ID_UUID = 1;
+    private static final int FIELD_ID = 1;
+    private static final int FIELD_NAME = 2;
+
+    /**
+     * DateTimeFormatter is immutable and thread-safe, so one instance is shared by every export,
+     * rather than creating a SimpleDateFormat per date.
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(Json.DATE_FORMAT_MS, Locale.US);
+
+    // the arrays of each Json.USER_DEFINES entry, in order
+    private static final String[] GROUP_ARRAYS = {
+            Json.BAIT_CATEGORIES,
+            Json.BAITS,
+            Json.FISHING_METHODS,
+            Json.LOCATIONS,
+            Json.SPECIES,
+            Json.WATER_CLARITIES,
+            Json.ANGLERS,
+    };
+
+    // more workers than this don't help, since the entries section is most of an export
+    private static final int MAX_WORKERS = 4;
+
+    // the number of objects in each page of a section, and how many pages of each section can be
+    // built ahead of the writer
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES_AHEAD = 4;
+
+    /**
+     * Schema versions accepted by {@link #writeJson(Context, Writer, boolean, int)}.
+     *
+     * SCHEMA_V1 is compatible with iOS backups. SCHEMA_V2 leaves out everything the Dart importer
+     * doesn't read: the empty arrays and journal name of each Json.USER_DEFINES entry, the
+     * journal, bait category and location name of each catch (its fishing spot is referenced by
+     * ID instead), the catch date of its weather, the entry date and bait name of each photo,
+     * and the location name of each fishing spot.
+     */
+    public static final int SCHEMA_V1 = 1;
+    public static final int SCHEMA_V2 = 2;
 
-        return new JSONObject().put(Json.JOURNAL, json);
+    /**
+     * The state of the current export. Exports aren't reentrant; MigrationChannel only runs one at
+     * a time.
+     */
+    private static StringDictionary sStringDictionary;
+    private static volatile int sSchemaVersion = SCHEMA_V1;
+
+    /**
+     * When sections are built on worker threads, strings are put as a DeferredString, and
+     * replaced with their index by the writing thread. See {@link #resolveStrings(JSONObject)}.
+     */
+    private static volatile boolean sIsDeferringStrings;
+
+    /**
+     * A string put by {@link #putString(JSONObject, String, String)} while strings are deferred.
+     */
+    private static final class DeferredString {
+        final String value;
+
+        DeferredString(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A page of a section, queued by {@link #queuePages(BlockingQueue, UserDefineIterator)}.
+     */
+    private static final class Page {
+        static final Page LAST = new Page(Collections.emptyList(), null);
+
+        final List<JSONObject> objects;
+        final UserDefineObject last;
+
+        Page(List<JSONObject> objects, UserDefineObject last) {
+            this.objects = objects;
+            this.last = last;
+        }
+    }
+
+    /**
+     * A section being built on a worker thread, on its own read-only connection. Its pages are
+     * queued for the writer, which blocks the worker once MAX_PAGES_AHEAD pages are waiting.
+     */
+    private static final class PagedSection {
+        final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(MAX_PAGES_AHEAD);
+        final Future<Void> result;
+
+        PagedSection(ExecutorService workers, String path, IteratorSupplier iterator) {
+            result = workers.submit(onReadConnection(path, () -> {
+                queuePages(pages, iterator.get());
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * @see #writeJson(Context, Writer, boolean, int, boolean, ExportCheckpoint, OnCheckpoint)
+     */
+    public static void writeJson(Context context, Writer writer, boolean useStringDictionary, int schemaVersion) throws JSONException, IOException {
+        writeJson(context, writer, useStringDictionary, schemaVersion, false, null, null);
+    }
+
+    /**
+     * Writes a JSON representation of the current {@link Logbook} to the given writer.
+     *
+     * The trips, entries and each user define group are independent, so they're built at the
+     * same time on a pool of at most MAX_WORKERS threads, each reading from its own read-only
+     * connection. Sections are written by the calling thread, in a fixed order, so the document
+     * is the same as one built on a single thread. Each section is passed to the writer in pages,
+     * so only a few pages of it are in memory at a time.
+     *
+     * @param useStringDictionary If true, strings repeated throughout the export are written once,
+     *                            to Json.STRINGS, and referenced by index. The keys that use
+     *                            indexes are written to Json.STRING_KEYS.
+     * @param schemaVersion SCHEMA_V1 or SCHEMA_V2. Versions other than SCHEMA_V1 are written to
+     *                      Json.SCHEMA_VERSION.
+     * @param useProtobuf If true, the Json.USER_DEFINES entries returned by
+     *                    {@link #writeProtoMessages()} are left out. Nothing before them
+     *                    depends on it, so it doesn't have to match resumeFrom's export.
+     * @param resumeFrom If not null, the export continues from this checkpoint, and writer
+     *                   appends to the output written before it. Must be compatible with
+     *                   useStringDictionary and schemaVersion.
+     * @param checkpoints If not null, receives a checkpoint once trips are written, after each
+     *                    page of entries, and once entries are written.
+     * @throws JSONException Throws a JSONException if an entity could not be constructed.
+     * @throws IOException Throws an IOException if the writer fails, or if a section fails to
+     *                     read.
+     *
+     * @see StringDictionary
+     * @see ExportCheckpoint
+     */
+    public static void writeJson(Context context, Writer writer, boolean useStringDictionary, int schemaVersion,
+                                 boolean useProtobuf, ExportCheckpoint resumeFrom, OnCheckpoint checkpoints) throws JSONException, IOException {
+        JsonStreamWriter out;
+        StringDictionary dictionary;
+        int section;
+        Date lastCatchDate;
+
+        if (resumeFrom == null) {
+            out = new JsonStreamWriter(writer);
+            dictionary = useStringDictionary ? new StringDictionary() : null;
+            section = 0;
+            lastCatchDate = null;
+        } else {
+            out = new JsonStreamWriter(writer, resumeFrom.getNesting());
+            dictionary = resumeFrom.getStringDictionary();
+            section = resumeFrom.getSection();
+            lastCatchDate = resumeFrom.getLastCatchDate();
+        }
+
+        String path = Logbook.getDatabase().getPath();
+        ExecutorService workers = newWorkers();
+
+        if (resumeFrom == null) {
+            out.beginObject();
+            out.name(Json.JOURNAL).beginObject();
+        }
+
+        try {
+            openExport(dictionary);
+            sIsDeferringStrings = dictionary != null;
+            sSchemaVersion = schemaVersion;
+
+            // sections are submitted in the order they're written, and a section's worker is done
+            // once its last page is taken, so even a single worker builds the section the writer
+            // is waiting on
+            PagedSection trips = null;
+            if (section < ExportCheckpoint.SECTION_ENTRIES)
+                trips = new PagedSection(workers, path, Logbook::iterateTrips);
+
+            PagedSection entries = null;
+            if (section < ExportCheckpoint.SECTION_USER_DEFINES)
+                entries = new PagedSection(workers, path, () -> Logbook.iterateCatches(lastCatchDate));
+
+            List<UserDefineGroup> groups = getUserDefineGroups(!useProtobuf);
+            List<PagedSection> groupSections = new ArrayList<>();
+            for (UserDefineGroup group : groups)
+                groupSections.add(new PagedSection(workers, path, group.iterator));
+
+            if (trips != null) {
+                out.name(Json.NAME).value(Logbook.getName());
+                out.name(Json.TRIPS);
+                writeJsonArray(out, trips);
+                out.name(Json.ENTRIES).beginArray();
+                checkpoint(out, ExportCheckpoint.SECTION_ENTRIES, null, schemaVersion, dictionary, checkpoints);
+            }
+
+            if (entries != null) {
+                for (Page page = takePage(entries); !page.objects.isEmpty(); page = takePage(entries)) {
+                    writePage(out, page);
+                    checkpoint(out, ExportCheckpoint.SECTION_ENTRIES, ((Catch) page.last).getDate(), schemaVersion, dictionary, checkpoints);
+                }
+                out.endArray();
+                await(entries.result);
+                checkpoint(out, ExportCheckpoint.SECTION_USER_DEFINES, null, schemaVersion, dictionary, checkpoints);
+            }
+
+            out.name(Json.USER_DEFINES).beginArray();
+            for (int i = 0; i < groups.size(); i++)
+                writeUserDefineGroup(out, groups.get(i).name, groups.get(i).arrName, groupSections.get(i));
+            out.endArray();
+
+            out.name(Json.MEASUREMENT_SYSTEM).value(getUnits(context));
+            out.name(Json.WEATHER_MEASUREMENT_SYSTEM).value(getWeatherUnits(context));
+        } finally {
+            stopSections(workers);
+        }
+
+        out.endObject();
+
+        if (schemaVersion != SCHEMA_V1)
+            out.name(Json.SCHEMA_VERSION).value(schemaVersion);
+
+        if (dictionary != null) {
+            out.name(Json.STRINGS).value(dictionary.getStrings());
+            out.name(Json.STRING_KEYS).value(dictionary.getKeys());
+        }
+
+        out.endObject();
+        out.flush();
+    }
+
+    /**
+     * Writes the same data as {@link #writeJson(Context, Writer, boolean, int)}, split into
+     * batches that can be handled as they're written:
+     *
+     *   1. BATCH_JOURNAL, a Json.JOURNAL object without its arrays.
+     *   2. BATCH_USER_DEFINES, the Json.USER_DEFINES array.
+     *   3. BATCH_TRIPS, arrays of at most PAGE_SIZE trips.
+     *   4. BATCH_ENTRIES, arrays of at most PAGE_SIZE catches.
+     *
+     * Sections are built the same way writeJson builds them, so the next pages are read while
+     * callbacks handles a batch. A {@link StringDictionary} isn't used, since it's only complete
+     * once every batch has been written.
+     *
+     * @param schemaVersion SCHEMA_V1 or SCHEMA_V2.
+     * @param callbacks Receives each batch, on the calling thread.
+     * @throws JSONException Throws a JSONException if an entity could not be constructed.
+     * @throws IOException Throws an IOException if callbacks fails, or if a section fails to
+     *                     read.
+     */
+    public static void writeBatches(Context context, int schemaVersion, OnBatch callbacks) throws JSONException, IOException {
+        String path = Logbook.getDatabase().getPath();
+        ExecutorService workers = newWorkers();
+
+        try {
+            openExport(null);
+            sSchemaVersion = schemaVersion;
+
+            // submitted in the order they're written; see writeJson
+            List<UserDefineGroup> groups = getUserDefineGroups(true);
+            List<PagedSection> groupSections = new ArrayList<>();
+            for (UserDefineGroup group : groups)
+                groupSections.add(new PagedSection(workers, path, group.iterator));
+
+            PagedSection trips = new PagedSection(workers, path, Logbook::iterateTrips);
+            PagedSection entries = new PagedSection(workers, path, Logbook::iterateCatches);
+
+            StringWriter journal = new StringWriter();
+            JsonStreamWriter out = new JsonStreamWriter(journal);
+            out.beginObject();
+            out.name(Json.NAME).value(Logbook.getName());
+            out.name(Json.MEASUREMENT_SYSTEM).value(getUnits(context));
+            out.name(Json.WEATHER_MEASUREMENT_SYSTEM).value(getWeatherUnits(context));
+            out.endObject();
+            out.flush();
+            callbacks.onBatch(BATCH_JOURNAL, journal.toString());
+
+            StringWriter userDefines = new StringWriter();
+            out = new JsonStreamWriter(userDefines);
+            out.beginArray();
+            for (int i = 0; i < groups.size(); i++)
+                writeUserDefineGroup(out, groups.get(i).name, groups.get(i).arrName, groupSections.get(i));
+            out.endArray();
+            out.flush();
+            callbacks.onBatch(BATCH_USER_DEFINES, userDefines.toString());
+
+            writeBatchPages(BATCH_TRIPS, trips, callbacks);
+            writeBatchPages(BATCH_ENTRIES, entries, callbacks);
+        } finally {
+            stopSections(workers);
+        }
+    }
+
+    /**
+     * Writes the user defines that are only an ID and a name as their anglerslog.proto messages,
+     * so they can be added as is, rather than parsed from JSON. Objects without a name are
+     * skipped, as the importer skips them.
+     *
+     * @return The length-delimited messages of each PROTO_* type.
+     * @see #writeJson(Context, Writer, boolean, int, boolean, ExportCheckpoint, OnCheckpoint)
+     */
+    public static Map<String, byte[]> writeProtoMessages() {
+        Map<String, byte[]> result = new HashMap<>();
+        result.put(PROTO_ANGLERS, writeProtoMessages(Logbook.iterateAnglers()));
+        result.put(PROTO_BAIT_CATEGORIES, writeProtoMessages(Logbook.iterateBaitCategories()));
+        result.put(PROTO_METHODS, writeProtoMessages(Logbook.iterateFishingMethods()));
+        result.put(PROTO_SPECIES, writeProtoMessages(Logbook.iterateSpecies()));
+        result.put(PROTO_WATER_CLARITIES, writeProtoMessages(Logbook.iterateWaterClarities()));
+        return result;
+    }
+
+    /**
+     * Writes each object read by the given iterator as a length-delimited message with an Id and
+     * a name. The iterator is closed.
+     */
+    private static byte[] writeProtoMessages(UserDefineIterator iterator) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            while (iterator.hasNext()) {
+                UserDefineObject obj = iterator.next();
+                if (obj.getName() == null)
+                    continue;
+
+                new ProtoWriter()
+                        .message(FIELD_ID, new ProtoWriter().string(FIELD_ID_UUID, obj.getIdAsString()))
+                        .string(FIELD_NAME, obj.getName())
+                        .writeDelimitedTo(bytes);
+            }
+        } finally {
+            iterator.close();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return A pool to build an export's sections on. One core is left for the writing thread.
+     */
+    private static ExecutorService newWorkers() {
+        int workerCount = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        return Executors.newFixedThreadPool(workerCount);
+    }
+
+    /**
+     * Interrupts any section still running, such as the entries section when the writer fails,
+     * and resets the export's state once they've stopped.
+     */
+    private static void stopSections(ExecutorService workers) {
+        workers.shutdownNow();
+
+        // a section that ignores its interrupt is still reading the export's state, so it's only
+        // reset once every section has stopped
+        if (awaitTermination(workers)) {
+            sIsDeferringStrings = false;
+            sSchemaVersion = SCHEMA_V1;
+            closeExport();
+        } else {
+            Log.w(TAG, "Export sections didn't stop, leaving the export state open");
+        }
+    }
+
+    /**
+     * Every user define, weather, photo and "used" relationship is read once, up front, rather
+     * than once per reference.
+     */
+    private static void openExport(StringDictionary dictionary) {
+        sStringDictionary = dictionary;
+
+        Logbook.openIdentityMap();
+        Logbook.openWeatherMap();
+        UsedUserDefineObject.openMap();
+        PhotoUserDefineObject.openPhotoMap();
+    }
+
+    private static void closeExport() {
+        PhotoUserDefineObject.closePhotoMap();
+        UsedUserDefineObject.closeMap();
+        Logbook.closeWeatherMap();
+        Logbook.closeIdentityMap();
+        sStringDictionary = null;
+    }
+
+    /**
+     * @return True if the export being written leaves out data that's only used by iOS.
+     * @see #SCHEMA_V2
+     */
+    public static boolean isCompact() {
+        return sSchemaVersion >= SCHEMA_V2;
+    }
+
+    /**
+     * Puts a string that's likely repeated throughout the export. If the export uses a
+     * {@link StringDictionary}, the string's index is put instead.
+     */
+    public static void putString(JSONObject json, String key, String value) throws JSONException {
+        if (sStringDictionary == null || value == null)
+            json.put(key, value);
+        else if (sIsDeferringStrings)
+            json.put(key, new DeferredString(value));
+        else
+            json.put(key, sStringDictionary.indexOf(key, value));
+    }
+
+    /**
+     * @see #putString(JSONObject, String, String)
+     */
+    private static void writeString(JsonStreamWriter out, String key, String value) throws IOException {
+        out.name(key);
+
+        if (sStringDictionary == null || value == null)
+            out.value(value);
+        else
+            out.value(sStringDictionary.indexOf(key, value));
+    }
+
+    /**
+     * Puts the names of the given objects.
+     * @see #putString(JSONObject, String, String)
+     */
+    public static void putNames(JSONObject json, String key, ArrayList<UserDefineObject> arr) throws JSONException {
+        if (sStringDictionary == null) {
+            json.put(key, getNameJsonArray(arr));
+            return;
+        }
+
+        JSONArray indexes = new JSONArray();
+        for (UserDefineObject obj : arr) {
+            if (sIsDeferringStrings)
+                indexes.put(new DeferredString(obj.getName()));
+            else
+                indexes.put(sStringDictionary.indexOf(key, obj.getName()));
+        }
+
+        json.put(key, indexes);
     }
 
     /**
@@ -53,7 +546,7 @@ public class JsonExporter {
      */
     @NonNull
     public static String dateToString(Date date) {
-        return new SimpleDateFormat(Json.DATE_FORMAT_MS, Locale.US).format(date);
+        return DATE_FORMATTER.format(Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()));
     }
 
     /**
@@ -83,23 +576,245 @@ public class JsonExporter {
     }
 
     /**
-     * Gets the JSON entry for Json.USER_DEFINES.
-     * @see #getUserDefineJsonObject(String, String, ArrayList)
+     * A Json.USER_DEFINES entry, with a supplier of its objects so they can be read on any thread.
+     */
+    private static final class UserDefineGroup {
+        final String name;
+        final String arrName;
+        final IteratorSupplier iterator;
+
+        UserDefineGroup(String name, String arrName, IteratorSupplier iterator) {
+            this.name = name;
+            this.arrName = arrName;
+            this.iterator = iterator;
+        }
+    }
+
+    /**
+     * @param includeProtoGroups If false, the groups returned by {@link #writeProtoMessages()} are
+     *                           left out.
+     * @return The Json.USER_DEFINES entries, in the order they're written.
+     */
+    private static List<UserDefineGroup> getUserDefineGroups(boolean includeProtoGroups) {
+        List<UserDefineGroup> groups = new ArrayList<>();
+
+        if (includeProtoGroups)
+            groups.add(new UserDefineGroup(Json.NAME_BAIT_CATEGORIES, Json.BAIT_CATEGORIES, Logbook::iterateBaitCategories));
+
+        groups.add(new UserDefineGroup(Json.NAME_BAITS, Json.BAITS, Logbook::iterateBaits));
+
+        if (includeProtoGroups)
+            groups.add(new UserDefineGroup(Json.NAME_FISHING_METHODS, Json.FISHING_METHODS, Logbook::iterateFishingMethods));
+
+        groups.add(new UserDefineGroup(Json.NAME_LOCATIONS, Json.LOCATIONS, Logbook::iterateLocations));
+
+        if (includeProtoGroups) {
+            groups.add(new UserDefineGroup(Json.NAME_SPECIES, Json.SPECIES, Logbook::iterateSpecies));
+            groups.add(new UserDefineGroup(Json.NAME_WATER_CLARITIES, Json.WATER_CLARITIES, Logbook::iterateWaterClarities));
+            groups.add(new UserDefineGroup(Json.NAME_ANGLERS, Json.ANGLERS, Logbook::iterateAnglers));
+        }
+
+        return groups;
+    }
+
+    /**
+     * Writes the objects of the given section as a JSON array, one page at a time.
+     */
+    private static void writeJsonArray(JsonStreamWriter out, PagedSection section) throws JSONException, IOException {
+        out.beginArray();
+
+        for (Page page = takePage(section); !page.objects.isEmpty(); page = takePage(section))
+            writePage(out, page);
+
+        out.endArray();
+        await(section.result);
+    }
+
+    /**
+     * Passes each page of the given section to callbacks as a JSON array.
+     */
+    private static void writeBatchPages(String type, PagedSection section, OnBatch callbacks) throws JSONException, IOException {
+        for (Page page = takePage(section); !page.objects.isEmpty(); page = takePage(section)) {
+            StringWriter batch = new StringWriter();
+            JsonStreamWriter out = new JsonStreamWriter(batch);
+            out.beginArray();
+            writePage(out, page);
+            out.endArray();
+            out.flush();
+            callbacks.onBatch(type, batch.toString());
+        }
+
+        await(section.result);
+    }
+
+    private static void writePage(JsonStreamWriter out, Page page) throws JSONException, IOException {
+        for (JSONObject json : page.objects)
+            out.value(resolveStrings(json));
+    }
+
+    /**
+     * Adds the JSON of each object read by the given iterator to the given queue, in pages of
+     * PAGE_SIZE objects, followed by Page.LAST. Blocks while the queue is full. The iterator is
+     * closed.
+     */
+    private static void queuePages(BlockingQueue<Page> queue, UserDefineIterator iterator) throws JSONException, InterruptedException {
+        try {
+            while (iterator.hasNext()) {
+                List<JSONObject> objects = new ArrayList<>(PAGE_SIZE);
+                UserDefineObject last = null;
+
+                while (objects.size() < PAGE_SIZE && iterator.hasNext()) {
+                    last = iterator.next();
+                    objects.add(last.toJson());
+                }
+
+                queue.put(new Page(objects, last));
+            }
+
+            queue.put(Page.LAST);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * @return The next page of the given section, or Page.LAST if there are no more pages.
+     * @throws IOException If the section failed.
+     */
+    private static Page takePage(PagedSection section) throws JSONException, IOException {
+        try {
+            while (true) {
+                Page page = section.pages.poll(1, TimeUnit.SECONDS);
+                if (page != null)
+                    return page;
+
+                // the section failed before queueing its last page
+                if (section.result.isDone()) {
+                    await(section.result);
+                    return Page.LAST;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting");
+        }
+    }
+
+    /**
+     * Wraps a section so it reads from its own read-only connection to the database at the given
+     * path, rather than the shared connection.
+     * @see QueryHelper#bindThreadDatabase(SQLiteDatabase)
+     */
+    private static <T> Callable<T> onReadConnection(String path, Callable<T> section) {
+        return () -> {
+            SQLiteDatabase database = SQLiteDatabase.openDatabase(path, null,
+                    SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+            ReadSession session = ReadSession.begin(database);
+            QueryHelper.bindThreadDatabase(database);
+
+            try {
+                return section.call();
+            } finally {
+                QueryHelper.bindThreadDatabase(null);
+                session.end();
+                database.close();
+            }
+        };
+    }
+
+    /**
+     * Waits for a section to finish, rethrowing its exception if it failed.
      */
-    private static JSONArray getUserDefinesJson() throws JSONException {
-        JSONArray json = new JSONArray();
+    private static <T> T await(Future<T> section) throws JSONException, IOException {
+        try {
+            return section.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof JSONException)
+                throw (JSONException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
 
-        json.put(getUserDefineJsonObject(Json.NAME_BAIT_CATEGORIES, Json.BAIT_CATEGORIES, Logbook.getBaitCategories()));
-        json.put(getUserDefineJsonObject(Json.NAME_BAITS, Json.BAITS, Logbook.getBaits()));
-        json.put(getUserDefineJsonObject(Json.NAME_FISHING_METHODS, Json.FISHING_METHODS, Logbook.getFishingMethods()));
-        json.put(getUserDefineJsonObject(Json.NAME_LOCATIONS, Json.LOCATIONS, Logbook.getLocations()));
-        json.put(getUserDefineJsonObject(Json.NAME_SPECIES, Json.SPECIES, Logbook.getSpecies()));
-        json.put(getUserDefineJsonObject(Json.NAME_WATER_CLARITIES, Json.WATER_CLARITIES, Logbook.getWaterClarities()));
-        json.put(getUserDefineJsonObject(Json.NAME_ANGLERS, Json.ANGLERS, Logbook.getAnglers()));
+            throw new IOException("Failed to export section", cause);
+        }
+    }
+
+    /**
+     * Flushes what's been written so far and passes a checkpoint for it to callbacks, if there
+     * are any.
+     */
+    private static void checkpoint(JsonStreamWriter out, int section, Date lastCatchDate, int schemaVersion,
+                                   StringDictionary dictionary, OnCheckpoint callbacks) throws IOException {
+        if (callbacks == null)
+            return;
+
+        out.flush();
+        callbacks.onCheckpoint(new ExportCheckpoint(section, lastCatchDate, out.getNesting(), schemaVersion, dictionary));
+    }
+
+    /**
+     * @return True if every section stopped, false if they didn't stop in time or the calling
+     *         thread was interrupted while waiting.
+     */
+    private static boolean awaitTermination(ExecutorService workers) {
+        try {
+            return workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Replaces each DeferredString in the given JSON with its dictionary index. Objects are
+     * visited in the order their keys were put, which is the order the strings would have been
+     * added to the dictionary if they weren't deferred, so the indexes are the same.
+     *
+     * @return The given JSON.
+     */
+    private static JSONObject resolveStrings(JSONObject json) throws JSONException {
+        if (!sIsDeferringStrings)
+            return json;
+
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.get(key);
+
+            // replacing a key's value keeps its position, so this doesn't affect iteration
+            if (value instanceof DeferredString)
+                json.put(key, sStringDictionary.indexOf(key, ((DeferredString) value).value));
+            else if (value instanceof JSONObject)
+                resolveStrings((JSONObject) value);
+            else if (value instanceof JSONArray)
+                resolveStrings(key, (JSONArray) value);
+        }
 
         return json;
     }
 
+    /**
+     * @see #resolveStrings(JSONObject)
+     */
+    private static void resolveStrings(String key, JSONArray array) throws JSONException {
+        for (int i = 0; i < array.length(); i++) {
+            Object value = array.get(i);
+
+            if (value instanceof DeferredString)
+                array.put(i, sStringDictionary.indexOf(key, ((DeferredString) value).value));
+            else if (value instanceof JSONObject)
+                resolveStrings((JSONObject) value);
+            else if (value instanceof JSONArray)
+                resolveStrings(key, (JSONArray) value);
+        }
+    }
+
     /**
      * A helper method that takes in an array of {@link UserDefineObject} and outputs a
      * {@link JSONArray}.
@@ -120,36 +835,41 @@ public class JsonExporter {
     }
 
     /**
-     * A helper method for creating a Json.USER_DEFINES entry. Each entry contains a name, journal
+     * A helper method for writing a Json.USER_DEFINES entry. Each entry contains a name, journal
      * name, and an array for each {@link UserDefineObject} subclass. Most of these arrays will be
      * empty. It is done this way to keep compatibility with iOS.
      *
-     * @see #getUserDefinesJson()
+     * @see #writeJson(Context, Writer, boolean, int, boolean, ExportCheckpoint, OnCheckpoint)
      *
      * @param name The display name of the entry.
-     * @param arrName The name of the JSON property for the input array.
-     * @param arr The {@link UserDefineObject} array to convert to JSON.
-     * @return A {@link JSONObject} representation of a Json.USER_DEFINES entry.
-     * @throws JSONException Throws JSONException if the {@link JSONObject} cannot be constructed.
+     * @param arrName The name of the JSON property for the input objects.
+     * @param objects The section building the {@link UserDefineObject} instances to write.
+     * @throws JSONException Throws JSONException if an object's strings can't be resolved.
      */
-    private static JSONObject getUserDefineJsonObject(String name, String arrName, ArrayList<UserDefineObject> arr) throws JSONException {
-        JSONObject json = new JSONObject();
+    private static void writeUserDefineGroup(JsonStreamWriter out, String name, String arrName, PagedSection objects) throws JSONException, IOException {
+        out.beginObject();
+        out.name(Json.NAME).value(name);
 
-        json.put(Json.NAME, name);
-        json.put(Json.JOURNAL, Logbook.getName());
+        if (isCompact()) {
+            out.name(arrName);
+            writeJsonArray(out, objects);
+            out.endObject();
+            return;
+        }
 
-        // empty arrays are used here to keep iOS compatibility
-        json.put(Json.BAIT_CATEGORIES, new JSONArray());
-        json.put(Json.BAITS, new JSONArray());
-        json.put(Json.FISHING_METHODS, new JSONArray());
-        json.put(Json.LOCATIONS, new JSONArray());
-        json.put(Json.SPECIES, new JSONArray());
-        json.put(Json.WATER_CLARITIES, new JSONArray());
-        json.put(Json.ANGLERS, new JSONArray());
+        writeString(out, Json.JOURNAL, Logbook.getName());
 
-        // add the actual JSON array
-        json.put(arrName, getJsonArray(arr));
+        // empty arrays are used here to keep iOS compatibility; the actual array is written in
+        // place of its empty array
+        for (String arr : GROUP_ARRAYS) {
+            out.name(arr);
 
-        return json;
+            if (arr.equals(arrName))
+                writeJsonArray(out, objects);
+            else
+                out.beginArray().endArray();
+        }
+
+        out.endObject();
     }
 }
@@ -0,0 +1,154 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The JsonStreamWriter class writes a JSON document to a {@link Writer} as it's built, so the
+ * document never has to be held in memory as a whole.
+ *
+ * Unlike {@link android.util.JsonWriter}, strings are escaped with {@link JSONObject#quote(String)},
+ * and {@link JSONObject} and {@link JSONArray} values are written with their own toString(). The
+ * output is therefore identical to calling toString() on the equivalent org.json document.
+ *
+ * @author Cohen Adair
+ */
+public class JsonStreamWriter {
+    private static final char NESTING_EMPTY = '0';
+    private static final char NESTING_NOT_EMPTY = '1';
+
+    private final Writer mWriter;
+
+    // for each open object or array, whether anything has been written to it yet
+    private final ArrayDeque<Boolean> mIsEmpty = new ArrayDeque<>();
+    private boolean mIsAfterName;
+
+    public JsonStreamWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * Creates a JsonStreamWriter that continues a document written by another JsonStreamWriter,
+     * such as one resumed from an {@link ExportCheckpoint}.
+     *
+     * @param nesting The other writer's {@link #getNesting()}.
+     */
+    public JsonStreamWriter(Writer writer, String nesting) {
+        mWriter = writer;
+
+        for (int i = 0; i < nesting.length(); i++)
+            mIsEmpty.push(nesting.charAt(i) == NESTING_EMPTY);
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        beforeValue();
+        mWriter.write(JSONObject.quote(name));
+        mWriter.write(':');
+        mIsAfterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        beforeValue();
+        mWriter.write(JSONObject.quote(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(int value) throws IOException {
+        beforeValue();
+        mWriter.write(Integer.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(JSONObject value) throws IOException {
+        beforeValue();
+        mWriter.write(value.toString());
+        return this;
+    }
+
+    public JsonStreamWriter value(JSONArray value) throws IOException {
+        beforeValue();
+        mWriter.write(value.toString());
+        return this;
+    }
+
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    /**
+     * @return The open objects and arrays, outermost first, as a string that can be passed to
+     *         {@link #JsonStreamWriter(Writer, String)}. Must not be called between a name and
+     *         its value.
+     */
+    public String getNesting() {
+        if (mIsAfterName)
+            throw new IllegalStateException("Name without a value");
+
+        StringBuilder result = new StringBuilder();
+        Iterator<Boolean> isEmpty = mIsEmpty.descendingIterator();
+
+        while (isEmpty.hasNext())
+            result.append(isEmpty.next() ? NESTING_EMPTY : NESTING_NOT_EMPTY);
+
+        return result.toString();
+    }
+
+    private JsonStreamWriter open(char bracket) throws IOException {
+        beforeValue();
+        mWriter.write(bracket);
+        mIsEmpty.push(true);
+        return this;
+    }
+
+    private JsonStreamWriter close(char bracket) throws IOException {
+        if (mIsEmpty.isEmpty())
+            throw new IllegalStateException("Nothing to close");
+
+        mIsEmpty.pop();
+        mWriter.write(bracket);
+        return this;
+    }
+
+    /**
+     * Writes a separator if the current object or array already has a value. A value that
+     * follows a name is part of the same member, so it doesn't need one.
+     */
+    private void beforeValue() throws IOException {
+        if (mIsAfterName) {
+            mIsAfterName = false;
+            return;
+        }
+
+        if (mIsEmpty.isEmpty())
+            return;
+
+        if (!mIsEmpty.peek())
+            mWriter.write(',');
+        else {
+            mIsEmpty.pop();
+            mIsEmpty.push(false);
+        }
+    }
+}
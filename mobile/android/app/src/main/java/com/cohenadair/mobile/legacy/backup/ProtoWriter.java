@@ -0,0 +1,54 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ProtoWriter encodes a single protocol buffer message in the protobuf wire format. Only the
+ * field types needed to export legacy data are supported. Field numbers must match those in
+ * protobuf/anglerslog.proto.
+ *
+ * Default values (null and empty strings) aren't written, the same as a proto3 encoder.
+ *
+ * @author Cohen Adair
+ */
+public class ProtoWriter {
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+
+    public ProtoWriter string(int field, String value) {
+        if (value == null || value.isEmpty())
+            return this;
+
+        return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ProtoWriter message(int field, ProtoWriter message) {
+        return bytes(field, message.mBytes.toByteArray());
+    }
+
+    /**
+     * Writes this message's size, followed by the message, so several messages can be read from
+     * the same buffer.
+     */
+    public void writeDelimitedTo(ByteArrayOutputStream out) {
+        writeVarint(out, mBytes.size());
+        out.write(mBytes.toByteArray(), 0, mBytes.size());
+    }
+
+    private ProtoWriter bytes(int field, byte[] value) {
+        writeVarint(mBytes, (field << 3) | WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(mBytes, value.length);
+        mBytes.write(value, 0, value.length);
+        return this;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,66 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * A StringDictionary stores each distinct string of an export once. Entities then reference a
+ * string by its index in {@link #getStrings()}, rather than repeating it. This is used for values
+ * that are repeated throughout an export, such as species and bait names.
+ *
+ * The JSON keys whose values were replaced are kept in {@link #getKeys()}, so an importer knows
+ * which values to expand.
+ *
+ * @author Cohen Adair
+ */
+public class StringDictionary {
+    private final HashMap<String, Integer> mIndexes = new HashMap<>();
+    private final JSONArray mStrings = new JSONArray();
+    private final LinkedHashSet<String> mKeys = new LinkedHashSet<>();
+
+    public StringDictionary() {
+    }
+
+    /**
+     * Restores a dictionary from its {@link #getStrings()} and {@link #getKeys()}, so an export can
+     * continue to use the same indexes.
+     */
+    public StringDictionary(JSONArray strings, JSONArray keys) throws JSONException {
+        for (int i = 0; i < strings.length(); i++) {
+            mStrings.put(strings.getString(i));
+            mIndexes.put(strings.getString(i), i);
+        }
+
+        for (int i = 0; i < keys.length(); i++)
+            mKeys.add(keys.getString(i));
+    }
+
+    /**
+     * @param key The JSON key the string is used for.
+     * @param value The string to look up.
+     * @return The index of the given string, adding it if needed.
+     */
+    public int indexOf(String key, String value) {
+        mKeys.add(key);
+
+        Integer index = mIndexes.get(value);
+        if (index == null) {
+            index = mStrings.length();
+            mStrings.put(value);
+            mIndexes.put(value, index);
+        }
+
+        return index;
+    }
+
+    public JSONArray getStrings() {
+        return mStrings;
+    }
+
+    public JSONArray getKeys() {
+        return new JSONArray(mKeys);
+    }
+}
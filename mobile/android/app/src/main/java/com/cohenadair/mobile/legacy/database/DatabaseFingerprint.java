@@ -0,0 +1,74 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A DatabaseFingerprint is a cheap summary of a database file's state, used to tell whether the
+ * database has changed since an export of it was cached. It's made of:
+ *
+ * - The file's size and modification time.
+ * - The file change counter in the database header, which SQLite increments each time a
+ *   transaction modifies the file.
+ * - The number of rows in the photo tables.
+ *
+ * - The size of the -wal file, if the database is in WAL mode.
+ *
+ * Taking a fingerprint only reads. In WAL mode, writes sit in the -wal file until a checkpoint
+ * copies them into the database file, which happens at the latest when the database is closed,
+ * so callers comparing fingerprints taken before and after a close should checkpoint first.
+ *
+ * PRAGMA data_version isn't used, since it's only meaningful for the lifetime of a single
+ * connection.
+ *
+ * @author Cohen Adair
+ */
+public class DatabaseFingerprint {
+    // the offset and size of the file change counter in the database header
+    private static final int CHANGE_COUNTER_OFFSET = 24;
+    private static final int CHANGE_COUNTER_SIZE = 4;
+
+    private DatabaseFingerprint() {
+    }
+
+    /**
+     * @return The given database's fingerprint. Equal fingerprints mean the database hasn't
+     *         changed.
+     */
+    @NonNull
+    public static String of(SQLiteDatabase database) {
+        File file = new File(database.getPath());
+        File walFile = new File(database.getPath() + "-wal");
+
+        return file.length()
+                + ":" + file.lastModified()
+                + ":" + walFile.length()
+                + ":" + readChangeCounter(file)
+                + ":" + DatabaseUtils.queryNumEntries(database, CatchPhotoTable.NAME)
+                + ":" + DatabaseUtils.queryNumEntries(database, BaitPhotoTable.NAME);
+    }
+
+    /**
+     * @return The file change counter of the given database file, or -1 if it can't be read.
+     */
+    private static long readChangeCounter(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < CHANGE_COUNTER_OFFSET + CHANGE_COUNTER_SIZE)
+                return -1;
+
+            in.seek(CHANGE_COUNTER_OFFSET);
+            return in.readInt() & 0xFFFFFFFFL;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
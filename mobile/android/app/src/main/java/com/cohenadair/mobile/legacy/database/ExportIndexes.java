@@ -0,0 +1,142 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+
+import java.util.ArrayList;
+
+/**
+ * ExportIndexes are temporary indexes on the columns an export looks rows up by, which the
+ * {@link LogbookHelper} schema doesn't index. They're created right before an export, and each is
+ * analyzed so SQLite's query planner uses it. Dropping them once the export is done also removes
+ * their statistics, so the database is left as it was.
+ *
+ * An export that's killed leaves its indexes behind. The next export reuses them as they are,
+ * without writing to the database, so its
+ * {@link DatabaseFingerprint} matches the one the killed export was checkpointed with.
+ *
+ * Columns that are already the leading column of a UNIQUE constraint, such as
+ * UsedFishingMethod.catchId, are indexed by SQLite and aren't included here.
+ *
+ * @author Cohen Adair
+ */
+public class ExportIndexes {
+    private static final String TAG = "ExportIndexes";
+    private static final String PREFIX = "export_idx_";
+    private static final String STAT_TABLE = "sqlite_stat1";
+
+    /**
+     * Tables with fewer rows than this are scanned faster than an index can be built for them.
+     */
+    private static final long MIN_ROWS = 500;
+
+    /**
+     * Each entry is a table, followed by the columns to index. The lookup column comes first,
+     * followed by the columns read with it, so the lookups are covered by the index.
+     */
+    private static final String[][] INDEXES = {
+            { CatchPhotoTable.NAME, CatchPhotoTable.Columns.USER_DEFINE_ID, CatchPhotoTable.Columns.NAME },
+            { BaitPhotoTable.NAME, BaitPhotoTable.Columns.USER_DEFINE_ID, BaitPhotoTable.Columns.NAME },
+    };
+
+    private final SQLiteDatabase mDatabase;
+    private final ArrayList<String> mIndexes = new ArrayList<>();
+
+    private ExportIndexes(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    /**
+     * Creates an index for each table that is large enough to benefit from one, and runs ANALYZE
+     * on each index created. Nothing is created if the database is read-only.
+     *
+     * @param database The database to index.
+     * @return An ExportIndexes instance that can be used to drop the created indexes.
+     */
+    @NonNull
+    public static ExportIndexes create(SQLiteDatabase database) {
+        ExportIndexes indexes = new ExportIndexes(database);
+
+        if (database.isReadOnly()) {
+            Log.i(TAG, "Database is read-only, skipping export indexes.");
+            return indexes;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+
+        try {
+            for (String[] index : INDEXES)
+                indexes.createIfNeeded(index);
+        } catch (SQLiteException e) {
+            // the export still works without the indexes, it's just slower
+            Log.e(TAG, "Failed to create export indexes", e);
+        }
+
+        Log.i(TAG, "Created " + indexes.mIndexes.size() + " export indexes in " +
+                (SystemClock.elapsedRealtime() - start) + "ms.");
+
+        return indexes;
+    }
+
+    private void createIfNeeded(String[] index) {
+        String table = index[0];
+        String name = PREFIX + table + "_" + index[1];
+
+        if (exists("index", name)) {
+            mIndexes.add(name);
+            return;
+        }
+
+        long rows = DatabaseUtils.queryNumEntries(mDatabase, table);
+        if (rows < MIN_ROWS)
+            return;
+
+        StringBuilder columns = new StringBuilder();
+        for (int i = 1; i < index.length; i++) {
+            if (i > 1)
+                columns.append(", ");
+            columns.append(index[i]);
+        }
+
+        mDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + name + " ON " + table + "(" + columns + ")");
+        mIndexes.add(name);
+
+        // only this index is analyzed, so the statistics of the rest of the database aren't changed
+        mDatabase.execSQL("ANALYZE " + name);
+    }
+
+    /**
+     * Drops all indexes created by {@link #create(SQLiteDatabase)}. SQLite deletes an index's
+     * statistics when it's dropped, and the statistics table itself is dropped if that leaves it
+     * empty, since ANALYZE created it for the export.
+     */
+    public void drop() {
+        if (mIndexes.isEmpty())
+            return;
+
+        try {
+            for (String name : mIndexes)
+                mDatabase.execSQL("DROP INDEX IF EXISTS " + name);
+
+            if (exists("table", STAT_TABLE) && DatabaseUtils.queryNumEntries(mDatabase, STAT_TABLE) == 0)
+                mDatabase.execSQL("DROP TABLE " + STAT_TABLE);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to drop export indexes", e);
+        }
+
+        mIndexes.clear();
+    }
+
+    private boolean exists(String type, String name) {
+        return DatabaseUtils.longForQuery(mDatabase, "SELECT count(*) FROM sqlite_master WHERE type = ? AND name = ?",
+                new String[] { type, name }) > 0;
+    }
+}
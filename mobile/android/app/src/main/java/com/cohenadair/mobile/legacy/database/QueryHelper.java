@@ -8,21 +8,29 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.cohenadair.mobile.legacy.Weather;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitCategoryTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.LocationTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.PhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.SpeciesTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.TripTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.WaterClarityTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.WeatherTable;
 import com.cohenadair.mobile.legacy.database.cursors.BaitCursor;
 import com.cohenadair.mobile.legacy.database.cursors.CatchCursor;
+import com.cohenadair.mobile.legacy.database.cursors.CatchGraphCursor;
 import com.cohenadair.mobile.legacy.database.cursors.TripCursor;
 import com.cohenadair.mobile.legacy.database.cursors.UserDefineCursor;
 import com.cohenadair.mobile.legacy.database.cursors.WeatherCursor;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
 import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
 
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 
 /**
  * A class for easy database querying. This is also used so the rest of the application doesn't
@@ -32,11 +40,23 @@ import java.util.UUID;
  */
 public class QueryHelper {
     private static SQLiteDatabase mDatabase;
+    private static final StatementCache sStatementCache = new StatementCache();
+
+    // read connections used in place of mDatabase by the threads they're bound to
+    private static final ThreadLocal<SQLiteDatabase> sThreadDatabase = new ThreadLocal<>();
 
     public interface UserDefineQueryInterface {
         UserDefineObject getObject(UserDefineCursor cursor);
     }
 
+    /**
+     * Used to wrap a query's {@link Cursor} in the {@link UserDefineCursor} subclass for its
+     * table. The wrapper is created once per query so column indexes are only looked up once.
+     */
+    public interface UserDefineCursorFactory {
+        UserDefineCursor getCursor(Cursor cursor);
+    }
+
     public interface UsedQueryCallbacks {
         UserDefineObject getFromLogbook(String id);
     }
@@ -47,6 +67,31 @@ public class QueryHelper {
 
     public static void setDatabase(SQLiteDatabase database) {
         mDatabase = database;
+        sStatementCache.attach(database);
+    }
+
+    /**
+     * Queries made by the calling thread use the given connection, rather than the database
+     * passed to {@link #setDatabase(SQLiteDatabase)}. This allows several threads to read at
+     * the same time, each on its own connection. Writes always use the shared database.
+     *
+     * The connection's statement cache is sized the same as the shared database's, so it reuses
+     * the {@link StatementCache} SQL just as well.
+     *
+     * @param database The connection to use, or null to use the shared database again.
+     */
+    public static void bindThreadDatabase(SQLiteDatabase database) {
+        if (database == null) {
+            sThreadDatabase.remove();
+        } else {
+            sStatementCache.attachReader(database);
+            sThreadDatabase.set(database);
+        }
+    }
+
+    private static SQLiteDatabase readDatabase() {
+        SQLiteDatabase database = sThreadDatabase.get();
+        return (database == null) ? mDatabase : database;
     }
 
     /**
@@ -59,22 +104,105 @@ public class QueryHelper {
      * @return A Cursor of the query.
      */
     public static Cursor simpleQuery(String table, String column, String whereClause, String[] args) {
-        return mDatabase.query(table, new String[]{column}, whereClause, args, null, null, null);
+        return readDatabase().query(table, new String[]{column}, whereClause, args, null, null, null);
     }
 
     @NonNull
     public static CatchCursor queryCatches(String whereClause, String[] args) {
-        return new CatchCursor(mDatabase.query(CatchTable.NAME, null, whereClause, args, null, null, CatchTable.Columns.DATE + " DESC"));
+        return queryCatches(whereClause, args, 0);
+    }
+
+    /**
+     * @param limit The maximum number of catches, or 0 for no limit.
+     * @see #queryCatches(String, String[])
+     */
+    @NonNull
+    public static CatchCursor queryCatches(String whereClause, String[] args, int limit) {
+        return new CatchCursor(readDatabase().query(CatchTable.NAME, null, whereClause, args, null, null, CatchTable.Columns.DATE + " DESC", limitOrNull(limit)));
+    }
+
+    /**
+     * Queries catches, joined with every user define a {@link CatchCursor} would otherwise look
+     * up for each row: Species, Bait, BaitCategory, FishingSpot, Location and WaterClarity.
+     * Columns of joined tables are selected using {@link CatchGraphCursor#alias(String, String)},
+     * so columns in the where clause should be qualified with their table name.
+     *
+     * @param whereClause The SQL where clause.
+     * @param args The arguments for the where clause.
+     * @return A {@link CatchGraphCursor} that builds each Catch from a single row.
+     */
+    @NonNull
+    public static CatchGraphCursor queryCatchGraph(String whereClause, String[] args) {
+        return queryCatchGraph(whereClause, args, 0);
+    }
+
+    /**
+     * @param limit The maximum number of catches, or 0 for no limit.
+     * @see #queryCatchGraph(String, String[])
+     */
+    @NonNull
+    public static CatchGraphCursor queryCatchGraph(String whereClause, String[] args, int limit) {
+        String sql = "SELECT " + CatchTable.NAME + ".*, " +
+                joinedUserDefineColumns(SpeciesTable.NAME) + ", " +
+                joinedUserDefineColumns(BaitTable.NAME) + ", " +
+                joinedColumn(BaitTable.NAME, BaitTable.Columns.COLOR) + ", " +
+                joinedColumn(BaitTable.NAME, BaitTable.Columns.SIZE) + ", " +
+                joinedColumn(BaitTable.NAME, BaitTable.Columns.DESCRIPTION) + ", " +
+                joinedColumn(BaitTable.NAME, BaitTable.Columns.TYPE) + ", " +
+                joinedUserDefineColumns(BaitCategoryTable.NAME) + ", " +
+                joinedUserDefineColumns(FishingSpotTable.NAME) + ", " +
+                joinedColumn(FishingSpotTable.NAME, FishingSpotTable.Columns.LOCATION_ID) + ", " +
+                joinedColumn(FishingSpotTable.NAME, FishingSpotTable.Columns.LATITUDE) + ", " +
+                joinedColumn(FishingSpotTable.NAME, FishingSpotTable.Columns.LONGITUDE) + ", " +
+                joinedUserDefineColumns(LocationTable.NAME) + ", " +
+                joinedUserDefineColumns(WaterClarityTable.NAME) +
+                " FROM " + CatchTable.NAME +
+                leftJoin(SpeciesTable.NAME, SpeciesTable.Columns.ID, CatchTable.NAME, CatchTable.Columns.SPECIES_ID) +
+                leftJoin(BaitTable.NAME, BaitTable.Columns.ID, CatchTable.NAME, CatchTable.Columns.BAIT_ID) +
+                leftJoin(BaitCategoryTable.NAME, BaitCategoryTable.Columns.ID, BaitTable.NAME, BaitTable.Columns.CATEGORY_ID) +
+                leftJoin(FishingSpotTable.NAME, FishingSpotTable.Columns.ID, CatchTable.NAME, CatchTable.Columns.FISHING_SPOT_ID) +
+                leftJoin(LocationTable.NAME, LocationTable.Columns.ID, FishingSpotTable.NAME, FishingSpotTable.Columns.LOCATION_ID) +
+                leftJoin(WaterClarityTable.NAME, WaterClarityTable.Columns.ID, CatchTable.NAME, CatchTable.Columns.CLARITY_ID) +
+                ((whereClause == null) ? "" : " WHERE " + whereClause) +
+                " ORDER BY " + CatchTable.NAME + "." + CatchTable.Columns.DATE + " DESC" +
+                ((limit <= 0) ? "" : " LIMIT " + limit);
+
+        return new CatchGraphCursor(readDatabase().rawQuery(sql, args));
+    }
+
+    private static String limitOrNull(int limit) {
+        return (limit <= 0) ? null : Integer.toString(limit);
+    }
+
+    private static String joinedColumn(String table, String column) {
+        return table + "." + column + " AS " + CatchGraphCursor.alias(table, column);
+    }
+
+    private static String joinedUserDefineColumns(String table) {
+        return joinedColumn(table, UserDefineTable.Columns.ID) + ", " + joinedColumn(table, UserDefineTable.Columns.NAME);
+    }
+
+    private static String leftJoin(String table, String column, String onTable, String onColumn) {
+        return " LEFT JOIN " + table + " ON " + table + "." + column + " = " + onTable + "." + onColumn;
     }
 
     @NonNull
     public static BaitCursor queryBaits(String whereClause, String[] args) {
-        return new BaitCursor(mDatabase.query(BaitTable.NAME, null, whereClause, args, null, null, BaitTable.Columns.NAME));
+        return new BaitCursor(readDatabase().query(BaitTable.NAME, null, whereClause, args, null, null, BaitTable.Columns.NAME));
     }
 
     @NonNull
     public static TripCursor queryTrips(String whereClause, String[] args) {
-        return new TripCursor(mDatabase.query(TripTable.NAME, null, whereClause, args, null, null, TripTable.Columns.START_DATE + " DESC"));
+        return queryTrips(whereClause, args, 0);
+    }
+
+    /**
+     * @param limit The maximum number of trips, or 0 for no limit.
+     * @see #queryTrips(String, String[])
+     */
+    @NonNull
+    public static TripCursor queryTrips(String whereClause, String[] args, int limit) {
+        return new TripCursor(readDatabase().query(TripTable.NAME, null, whereClause, args, null, null, TripTable.Columns.START_DATE + " DESC", limitOrNull(limit)));
     }
 
     /**
@@ -90,7 +218,45 @@ public class QueryHelper {
      */
     @NonNull
     public static UserDefineCursor queryUserDefines(String table, String whereClause, String[] args) {
-        return new UserDefineCursor(mDatabase.query(table, null, whereClause, args, null, null, UserDefineTable.Columns.NAME));
+        return queryUserDefines(table, whereClause, args, UserDefineCursor::new);
+    }
+
+    /**
+     * @param factory Wraps the result in the {@link UserDefineCursor} subclass for the table.
+     * @see #queryUserDefines(String, String, String[])
+     */
+    @NonNull
+    public static UserDefineCursor queryUserDefines(String table, String whereClause, String[] args, UserDefineCursorFactory factory) {
+        String sql = sStatementCache.getSelectAll(table, whereClause, UserDefineTable.Columns.NAME);
+        return factory.getCursor(readDatabase().rawQuery(sql, args));
+    }
+
+    /**
+     * Queries a single page of user defines, ordered by name and then id so every row has a
+     * unique position, even in tables where names aren't unique.
+     *
+     * @param table The table (i.e. BaitTable.Name).
+     * @param last The last object of the previous page, or null for the first page.
+     * @param limit The maximum number of rows.
+     * @param factory Wraps the result in the {@link UserDefineCursor} subclass for the table.
+     * @return A {@link UserDefineCursor} subclass of the rows after last.
+     *
+     * @see UserDefineIterator
+     */
+    @NonNull
+    public static UserDefineCursor queryUserDefinePage(String table, UserDefineObject last, int limit, UserDefineCursorFactory factory) {
+        String name = UserDefineTable.Columns.NAME;
+        String id = UserDefineTable.Columns.ID;
+        String orderBy = name + ", " + id;
+
+        if (last == null)
+            return factory.getCursor(readDatabase().rawQuery(sStatementCache.getSelectAll(table, null, orderBy, limit), null));
+
+        // empty names are read as null
+        String lastName = (last.getName() == null) ? "" : last.getName();
+
+        String sql = sStatementCache.getSelectAll(table, name + " > ? OR (" + name + " = ? AND " + id + " > ?)", orderBy, limit);
+        return factory.getCursor(readDatabase().rawQuery(sql, new String[] { lastName, lastName, last.getIdAsString() }));
     }
 
     /**
@@ -131,8 +297,18 @@ public class QueryHelper {
      * @see #queryUserDefine(String, String, String, UserDefineQueryInterface)
      */
     public static UserDefineObject queryUserDefine(String table, String whereClause, String[] args, UserDefineQueryInterface callbacks) {
+        return queryUserDefine(queryUserDefines(table, whereClause, args), callbacks);
+    }
+
+    /**
+     * Retrieves the first {@link UserDefineObject} from the given cursor, and closes it.
+     *
+     * @param cursor The {@link UserDefineCursor} to read from.
+     * @param callbacks Callbacks for casting the resulting {@link UserDefineObject}.
+     * @return A {@link UserDefineObject} subclass, or null if the cursor is empty.
+     */
+    public static UserDefineObject queryUserDefine(UserDefineCursor cursor, UserDefineQueryInterface callbacks) {
         UserDefineObject obj = null;
-        UserDefineCursor cursor = queryUserDefines(table, whereClause, args);
 
         if (cursor.moveToFirst())
             obj = (callbacks == null) ? cursor.getObject() : callbacks.getObject(cursor);
@@ -152,20 +328,85 @@ public class QueryHelper {
      * @param callbacks Callbacks for the method.
      * @return An ArrayList of UserDefineObjects associated with the give superclass id.
      */
-    public static ArrayList<UserDefineObject> queryUsedUserDefineObject(String table, String resultColumn, String superColumn, UUID superId, UsedQueryCallbacks callbacks) {
+    public static ArrayList<UserDefineObject> queryUsedUserDefineObject(String table, String resultColumn, String superColumn, UserDefineId superId, UsedQueryCallbacks callbacks) {
         ArrayList<UserDefineObject> objs = new ArrayList<>();
         Cursor cursor = simpleQuery(table, resultColumn, superColumn + " = ?", new String[]{superId.toString()});
 
-        if (cursor.moveToFirst())
+        if (cursor.moveToFirst()) {
+            int resultIndex = cursor.getColumnIndex(resultColumn);
+
             while (!cursor.isAfterLast()) {
-                objs.add(callbacks.getFromLogbook(cursor.getString(cursor.getColumnIndex(resultColumn))));
+                objs.add(callbacks.getFromLogbook(cursor.getString(resultIndex)));
                 cursor.moveToNext();
             }
+        }
 
         cursor.close();
         return objs;
     }
 
+    /**
+     * Gets the ids of the "Used*" objects for a "super" UserDefineObject, directly from the "Used*"
+     * table. Unlike {@link #queryUsedUserDefineObject(String, String, String, UserDefineId, UsedQueryCallbacks)},
+     * the objects themselves are never read.
+     *
+     * @param table The "Used *" table name (i.e. UsedCatchTable).
+     * @param resultColumn The child column (i.e. UsedCatchTable.Columns.CATCH_ID).
+     * @param superColumn The superclass column (i.e. UsedCatchTable.Columns.TRIP_ID).
+     * @param superId The id of the superclass to filter used user define objects (i.e. trip id).
+     * @return An ArrayList of child ids associated with the given superclass id.
+     */
+    public static ArrayList<String> queryUsedIds(String table, String resultColumn, String superColumn, UserDefineId superId) {
+        ArrayList<String> ids = new ArrayList<>();
+        Cursor cursor = simpleQuery(table, resultColumn, superColumn + " = ?", new String[] { superId.toString() });
+
+        if (cursor.moveToFirst()) {
+            int resultIndex = cursor.getColumnIndex(resultColumn);
+
+            while (!cursor.isAfterLast()) {
+                ids.add(cursor.getString(resultIndex));
+                cursor.moveToNext();
+            }
+        }
+
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * Reads an entire "Used*" table with a single query.
+     *
+     * @param table The "Used *" table name (i.e. UsedFishingMethodTable).
+     * @param superColumn The superclass column (i.e. UsedFishingMethodTable.Columns.CATCH_ID).
+     * @param resultColumn The child column (i.e. UsedFishingMethodTable.Columns.FISHING_METHOD_ID).
+     * @return A map of superclass id to the ids of its children, in database order.
+     */
+    public static HashMap<String, ArrayList<String>> queryUsedIds(String table, String superColumn, String resultColumn) {
+        HashMap<String, ArrayList<String>> result = new HashMap<>();
+        Cursor cursor = readDatabase().query(table, new String[] { superColumn, resultColumn }, null, null, null, null, null);
+
+        if (cursor.moveToFirst()) {
+            int superIndex = cursor.getColumnIndex(superColumn);
+            int resultIndex = cursor.getColumnIndex(resultColumn);
+
+            while (!cursor.isAfterLast()) {
+                String superId = cursor.getString(superIndex);
+                ArrayList<String> ids = result.get(superId);
+
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    result.put(superId, ids);
+                }
+
+                ids.add(cursor.getString(resultIndex));
+                cursor.moveToNext();
+            }
+        }
+
+        cursor.close();
+        return result;
+    }
+
     /**
      * Gets photo names from the specified table and id. If id is null, returns all photos in the
      * specified table.
@@ -174,7 +415,7 @@ public class QueryHelper {
      * @param id The object id to query.
      * @return An ArrayList<String> of photo names.
      */
-    public static ArrayList<String> queryPhotos(String table, UUID id) {
+    public static ArrayList<String> queryPhotos(String table, UserDefineId id) {
         ArrayList<String> photos = new ArrayList<>();
         Cursor cursor;
 
@@ -183,16 +424,73 @@ public class QueryHelper {
         else
             cursor = simpleQuery(table, PhotoTable.Columns.NAME, null, null);
 
-        if (cursor.moveToFirst())
+        if (cursor.moveToFirst()) {
+            int nameIndex = cursor.getColumnIndex(PhotoTable.Columns.NAME);
+
             while (!cursor.isAfterLast()) {
-                photos.add(cursor.getString(cursor.getColumnIndex(PhotoTable.Columns.NAME)));
+                photos.add(cursor.getString(nameIndex));
                 cursor.moveToNext();
             }
+        }
 
         cursor.close();
         return photos;
     }
 
+    /**
+     * Reads every photo in the specified table with a single query, ordered by owner. Duplicate
+     * rows, which the photo tables allow, are only included once. Photos whose owner no longer
+     * exists are skipped; see {@link #deleteOrphanPhotos(String, String)}.
+     *
+     * @param table The photo table to query.
+     * @param ownerTable The table of the objects that own the photos.
+     * @return A map of object id to the names of its photos, in database order.
+     */
+    @NonNull
+    public static HashMap<String, ArrayList<String>> queryPhotos(String table, String ownerTable) {
+        HashMap<String, ArrayList<String>> result = new HashMap<>();
+        Cursor cursor = readDatabase().query(
+                table,
+                new String[] { PhotoTable.Columns.USER_DEFINE_ID, PhotoTable.Columns.NAME },
+                "EXISTS(" + photoOwnerQuery(table, ownerTable) + ")",
+                null, null, null,
+                PhotoTable.Columns.USER_DEFINE_ID + ", rowid"
+        );
+
+        try {
+            if (cursor.moveToFirst()) {
+                int idIndex = cursor.getColumnIndex(PhotoTable.Columns.USER_DEFINE_ID);
+                int nameIndex = cursor.getColumnIndex(PhotoTable.Columns.NAME);
+
+                // rows are grouped by owner, so each owner's photos are collected until the id
+                // changes
+                String currentId = null;
+                LinkedHashSet<String> currentPhotos = new LinkedHashSet<>();
+
+                while (!cursor.isAfterLast()) {
+                    String id = cursor.getString(idIndex);
+
+                    if (!id.equals(currentId)) {
+                        if (currentId != null)
+                            result.put(currentId, new ArrayList<>(currentPhotos));
+
+                        currentId = id;
+                        currentPhotos.clear();
+                    }
+
+                    currentPhotos.add(cursor.getString(nameIndex));
+                    cursor.moveToNext();
+                }
+
+                result.put(currentId, new ArrayList<>(currentPhotos));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
     public static boolean deleteQuery(String table, String whereClause, String[] args) {
         try {
             return mDatabase.delete(table, whereClause, args) == 1;
@@ -206,6 +504,28 @@ public class QueryHelper {
         return deleteQuery(table, PhotoTable.Columns.NAME + " = ?", new String[]{fileName});
     }
 
+    /**
+     * Deletes photos whose owner no longer exists. Each photo is checked with an anti-join on the
+     * owner's primary key, rather than comparing it to every owner id. Photos without an owner
+     * id are kept.
+     *
+     * @param table The photo table to clean.
+     * @param ownerTable The table of the objects that own the photos.
+     * @return The number of photos deleted.
+     */
+    public static int deleteOrphanPhotos(String table, String ownerTable) {
+        return mDatabase.delete(
+                table,
+                PhotoTable.Columns.USER_DEFINE_ID + " IS NOT NULL AND NOT EXISTS(" + photoOwnerQuery(table, ownerTable) + ")",
+                null
+        );
+    }
+
+    private static String photoOwnerQuery(String table, String ownerTable) {
+        return "SELECT 1 FROM " + ownerTable +
+                " WHERE " + ownerTable + "." + UserDefineTable.Columns.ID + " = " + table + "." + PhotoTable.Columns.USER_DEFINE_ID;
+    }
+
     /**
      * Retrieves the weather data for the specified catch id.
      *
@@ -213,7 +533,7 @@ public class QueryHelper {
      * @return A {@link com.cohenadair.mobile.legacy.Weather} object for the given catch id.
      */
     @Nullable
-    public static Weather queryWeather(UUID catchId) {
+    public static Weather queryWeather(UserDefineId catchId) {
         WeatherCursor cursor = new WeatherCursor(simpleQuery(
                 WeatherTable.NAME,
                 "*",
@@ -221,9 +541,37 @@ public class QueryHelper {
                 new String[] { catchId.toString() }
         ));
 
-        if (cursor.moveToFirst())
-            return cursor.getWeather();
+        try {
+            return cursor.moveToFirst() ? cursor.getWeather() : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Retrieves the weather data for every catch with a single query.
+     *
+     * @return A map of {@link com.cohenadair.mobile.legacy.user_defines.Catch} id to its
+     *         {@link com.cohenadair.mobile.legacy.Weather}.
+     */
+    @NonNull
+    public static HashMap<String, Weather> queryWeather() {
+        HashMap<String, Weather> result = new HashMap<>();
+        WeatherCursor cursor = new WeatherCursor(simpleQuery(WeatherTable.NAME, "*", null, null));
+
+        try {
+            if (cursor.moveToFirst()) {
+                int catchIdIndex = cursor.getColumnIndex(WeatherTable.Columns.CATCH_ID);
+
+                while (!cursor.isAfterLast()) {
+                    result.put(cursor.getString(catchIdIndex), cursor.getWeather());
+                    cursor.moveToNext();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
 
-        return null;
+        return result;
     }
 }
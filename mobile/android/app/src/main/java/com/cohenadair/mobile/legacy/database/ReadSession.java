@@ -0,0 +1,122 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * A ReadSession configures a database connection for a single, read-only pass over all of its
+ * data, such as exporting the {@link com.cohenadair.mobile.legacy.Logbook}:
+ *
+ * - query_only is enabled, so nothing can be written during the session.
+ * - The page cache is enlarged, the file is memory mapped and temporary tables (i.e. for sorting)
+ *   are kept in memory.
+ * - The connection uses the EXCLUSIVE locking mode, and a shared lock is acquired when the session
+ *   begins. The lock is held until the session ends, rather than acquired and released by every
+ *   query.
+ *
+ * Android's SQLiteDatabase only supports deferred (read) transactions starting with API 35, so
+ * the exclusive locking mode is used to hold one read lock for the whole session instead.
+ *
+ * In a rollback journal database, the lock held is a SHARED lock, so other read-only connections,
+ * such as those of a parallel export, can still read. In WAL mode however, an exclusive locking
+ * mode connection stops using the shared memory index, and every other connection gets
+ * SQLITE_BUSY. The locking mode is therefore left NORMAL for WAL databases; WAL readers don't
+ * take file locks per query anyway.
+ *
+ * Each setting is restored by {@link #end()}.
+ *
+ * @author Cohen Adair
+ */
+public class ReadSession {
+    private static final long CACHE_SIZE_KB = 8 * 1024;
+    private static final long MAX_MMAP_SIZE = 256 * 1024 * 1024;
+
+    private final SQLiteDatabase mDatabase;
+    private final long mCacheSize;
+    private final long mTempStore;
+    private final long mMmapSize;
+    private final boolean mIsExclusive;
+
+    private ReadSession(SQLiteDatabase database) {
+        mDatabase = database;
+        mCacheSize = getPragma("cache_size");
+        mTempStore = getPragma("temp_store");
+        mMmapSize = getPragma("mmap_size");
+        mIsExclusive = !"wal".equalsIgnoreCase(DatabaseUtils.stringForQuery(database, "PRAGMA journal_mode", null));
+    }
+
+    /**
+     * Configures the given database for reading and acquires its read lock.
+     *
+     * @param database The database to read.
+     * @return A ReadSession that must be ended with {@link #end()} before anything is written.
+     */
+    @NonNull
+    public static ReadSession begin(SQLiteDatabase database) {
+        ReadSession session = new ReadSession(database);
+        long fileSize = new File(database.getPath()).length();
+
+        if (!database.isReadOnly())
+            session.setPragma("query_only", "1");
+
+        // negative cache sizes are in KiB, rather than pages
+        session.setPragma("cache_size", Long.toString(-CACHE_SIZE_KB));
+        session.setPragma("temp_store", "MEMORY");
+        session.setPragma("mmap_size", Long.toString(Math.min(fileSize, MAX_MMAP_SIZE)));
+
+        if (session.mIsExclusive) {
+            session.setPragma("locking_mode", "EXCLUSIVE");
+
+            // in the exclusive locking mode, the first read acquires a lock that isn't released
+            // until the locking mode is reset
+            session.acquireLock();
+        }
+
+        return session;
+    }
+
+    /**
+     * Restores the database's original configuration and releases its read lock.
+     */
+    public void end() {
+        if (mIsExclusive)
+            setPragma("locking_mode", "NORMAL");
+        setPragma("mmap_size", Long.toString(mMmapSize));
+        setPragma("temp_store", Long.toString(mTempStore));
+        setPragma("cache_size", Long.toString(mCacheSize));
+
+        if (!mDatabase.isReadOnly())
+            setPragma("query_only", "0");
+
+        // locks held by the exclusive locking mode are released the next time the database is read
+        if (mIsExclusive)
+            acquireLock();
+    }
+
+    private void acquireLock() {
+        DatabaseUtils.longForQuery(mDatabase, "SELECT count(*) FROM sqlite_master", null);
+    }
+
+    private long getPragma(String name) {
+        return DatabaseUtils.longForQuery(mDatabase, "PRAGMA " + name, null);
+    }
+
+    /**
+     * Some pragmas return the new value as a row, so they're run as queries rather than with
+     * {@link SQLiteDatabase#execSQL(String)}.
+     */
+    private void setPragma(String name, String value) {
+        Cursor cursor = mDatabase.rawQuery("PRAGMA " + name + " = " + value, null);
+
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
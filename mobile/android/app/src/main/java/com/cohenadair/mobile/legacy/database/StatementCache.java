@@ -0,0 +1,64 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+
+/**
+ * The StatementCache keeps the SQL of each query shape {@link QueryHelper} runs, keyed by table,
+ * where clause and order. Reusing the exact same SQL string for a shape means it's built once,
+ * and that SQLite's per-connection prepared statement cache always has a hit for it, rather than
+ * preparing the same "SELECT * FROM X WHERE id = ?" again.
+ *
+ * @author Cohen Adair
+ */
+public class StatementCache {
+    private final HashMap<String, String> mStatements = new HashMap<>();
+
+    /**
+     * Makes sure the database can keep every prepared statement this cache hands out.
+     */
+    public void attach(SQLiteDatabase database) {
+        clear();
+        attachReader(database);
+    }
+
+    /**
+     * Like {@link #attach(SQLiteDatabase)}, for another connection that runs the same statements,
+     * such as a read connection used by an export worker. The cached SQL is kept.
+     */
+    public void attachReader(SQLiteDatabase database) {
+        database.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+    }
+
+    /**
+     * @return The SQL for a "SELECT *" query with the given shape. Where clause arguments aren't
+     *         part of the shape; they're bound when the query is run.
+     */
+    public String getSelectAll(String table, String whereClause, String orderBy) {
+        return getSelectAll(table, whereClause, orderBy, 0);
+    }
+
+    /**
+     * @param limit The maximum number of rows, or 0 for no limit. The limit is part of the shape.
+     * @see #getSelectAll(String, String, String)
+     */
+    public synchronized String getSelectAll(String table, String whereClause, String orderBy, int limit) {
+        String key = table + "|" + whereClause + "|" + orderBy + "|" + limit;
+        String sql = mStatements.get(key);
+
+        if (sql == null) {
+            sql = "SELECT * FROM " + table +
+                    ((whereClause == null) ? "" : " WHERE " + whereClause) +
+                    ((orderBy == null) ? "" : " ORDER BY " + orderBy) +
+                    ((limit <= 0) ? "" : " LIMIT " + limit);
+            mStatements.put(key, sql);
+        }
+
+        return sql;
+    }
+
+    public synchronized void clear() {
+        mStatements.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package com.cohenadair.mobile.legacy.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cohenadair.mobile.legacy.database.cursors.UserDefineCursor;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A UserDefineIterator reads {@link UserDefineObject} instances one page at a time, so only a
+ * single page is ever held in memory. Pages are found with keyset pagination: each query
+ * continues after the last object of the previous page, rather than using an OFFSET that has to
+ * skip every row before it.
+ *
+ * The iterator must be closed if it isn't read to the end.
+ *
+ * @author Cohen Adair
+ */
+public class UserDefineIterator implements Iterator<UserDefineObject>, Closeable {
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * Used to query a single page.
+     */
+    public interface PageQuery {
+        /**
+         * @param last The last object of the previous page, or null for the first page.
+         * @param limit The maximum number of rows to query.
+         * @return A cursor of the rows ordered after last.
+         */
+        UserDefineCursor query(@Nullable UserDefineObject last, int limit);
+    }
+
+    private final PageQuery mQuery;
+    private final QueryHelper.UserDefineQueryInterface mCallbacks;
+    private final Iterator<UserDefineObject> mObjects;
+
+    private UserDefineCursor mCursor;
+    private UserDefineObject mLast;
+    private boolean mIsDone;
+
+    public UserDefineIterator(PageQuery query, QueryHelper.UserDefineQueryInterface callbacks) {
+        mQuery = query;
+        mCallbacks = callbacks;
+        mObjects = null;
+    }
+
+    private UserDefineIterator(List<UserDefineObject> objects) {
+        mQuery = null;
+        mCallbacks = null;
+        mObjects = objects.iterator();
+    }
+
+    /**
+     * @return A UserDefineIterator over objects that are already in memory.
+     */
+    @NonNull
+    public static UserDefineIterator of(List<UserDefineObject> objects) {
+        return new UserDefineIterator(objects);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mObjects != null)
+            return mObjects.hasNext();
+
+        if (mIsDone)
+            return false;
+
+        if (mCursor != null) {
+            if (!mCursor.isAfterLast())
+                return true;
+
+            // a page with fewer rows than the limit is the last page
+            boolean isFullPage = mCursor.getCount() >= PAGE_SIZE;
+            mCursor.close();
+            mCursor = null;
+
+            if (!isFullPage) {
+                mIsDone = true;
+                return false;
+            }
+        }
+
+        mCursor = mQuery.query(mLast, PAGE_SIZE);
+
+        if (!mCursor.moveToFirst()) {
+            close();
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public UserDefineObject next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        if (mObjects != null)
+            return mObjects.next();
+
+        mLast = (mCallbacks == null) ? mCursor.getObject() : mCallbacks.getObject(mCursor);
+        mCursor.moveToNext();
+
+        return mLast;
+    }
+
+    /**
+     * Closes the current page's cursor. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (mCursor != null) {
+            mCursor.close();
+            mCursor = null;
+        }
+
+        mIsDone = true;
+    }
+}
@@ -4,8 +4,7 @@ import android.database.Cursor;
 
 import com.cohenadair.mobile.legacy.Logbook;
 import com.cohenadair.mobile.legacy.user_defines.Bait;
-
-import java.util.UUID;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineReference;
 
 import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
 
@@ -16,20 +15,30 @@ import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
  * @author Cohen Adair
  */
 public class BaitCursor extends UserDefineCursor {
+    private final int mCategoryIdIndex;
+    private final int mColorIndex;
+    private final int mSizeIndex;
+    private final int mDescriptionIndex;
+    private final int mTypeIndex;
 
     public BaitCursor(Cursor cursor) {
         super(cursor);
+        mCategoryIdIndex = getColumnIndex(BaitTable.Columns.CATEGORY_ID);
+        mColorIndex = getColumnIndex(BaitTable.Columns.COLOR);
+        mSizeIndex = getColumnIndex(BaitTable.Columns.SIZE);
+        mDescriptionIndex = getColumnIndex(BaitTable.Columns.DESCRIPTION);
+        mTypeIndex = getColumnIndex(BaitTable.Columns.TYPE);
     }
 
     public Bait getBait() {
-        String categoryId = getString(getColumnIndex(BaitTable.Columns.CATEGORY_ID));
+        String categoryId = getString(mCategoryIdIndex);
 
         Bait bait = new Bait(getObject(), true);
-        bait.setCategory(Logbook.getBaitCategory(categoryId));
-        bait.setColor(getString(getColumnIndex(BaitTable.Columns.COLOR)));
-        bait.setSize(getString(getColumnIndex(BaitTable.Columns.SIZE)));
-        bait.setDescription(getString(getColumnIndex(BaitTable.Columns.DESCRIPTION)));
-        bait.setType(getInt(getColumnIndex(BaitTable.Columns.TYPE)));
+        bait.setCategoryReference(new UserDefineReference<>(categoryId, Logbook::getBaitCategory));
+        bait.setColor(getString(mColorIndex));
+        bait.setSize(getString(mSizeIndex));
+        bait.setDescription(getString(mDescriptionIndex));
+        bait.setType(getInt(mTypeIndex));
 
         return bait;
     }
@@ -3,7 +3,12 @@ package com.cohenadair.mobile.legacy.database.cursors;
 import android.database.Cursor;
 
 import com.cohenadair.mobile.legacy.Logbook;
+import com.cohenadair.mobile.legacy.user_defines.Bait;
 import com.cohenadair.mobile.legacy.user_defines.Catch;
+import com.cohenadair.mobile.legacy.user_defines.FishingSpot;
+import com.cohenadair.mobile.legacy.user_defines.Species;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineReference;
+import com.cohenadair.mobile.legacy.user_defines.WaterClarity;
 
 import java.util.Date;
 
@@ -15,30 +20,56 @@ import static com.cohenadair.mobile.legacy.database.LogbookSchema.CatchTable;
  * @author Cohen Adair
  */
 public class CatchCursor extends UserDefineCursor {
+    private final int mDateIndex;
+    private final int mSpeciesIdIndex;
+    private final int mBaitIdIndex;
+    private final int mFishingSpotIdIndex;
+    private final int mWaterClarityIdIndex;
+    private final int mNotesIndex;
+    private final int mCatchResultIndex;
+    private final int mIsFavoriteIndex;
+    private final int mQuantityIndex;
+    private final int mWaterTemperatureIndex;
+    private final int mWaterDepthIndex;
+    private final int mLengthIndex;
+    private final int mWeightIndex;
 
     public CatchCursor(Cursor cursor) {
         super(cursor);
+        mDateIndex = getColumnIndex(CatchTable.Columns.DATE);
+        mSpeciesIdIndex = getColumnIndex(CatchTable.Columns.SPECIES_ID);
+        mBaitIdIndex = getColumnIndex(CatchTable.Columns.BAIT_ID);
+        mFishingSpotIdIndex = getColumnIndex(CatchTable.Columns.FISHING_SPOT_ID);
+        mWaterClarityIdIndex = getColumnIndex(CatchTable.Columns.CLARITY_ID);
+        mNotesIndex = getColumnIndex(CatchTable.Columns.NOTES);
+        mCatchResultIndex = getColumnIndex(CatchTable.Columns.CATCH_RESULT);
+        mIsFavoriteIndex = getColumnIndex(CatchTable.Columns.IS_FAVORITE);
+        mQuantityIndex = getColumnIndex(CatchTable.Columns.QUANTITY);
+        mWaterTemperatureIndex = getColumnIndex(CatchTable.Columns.WATER_TEMPERATURE);
+        mWaterDepthIndex = getColumnIndex(CatchTable.Columns.WATER_DEPTH);
+        mLengthIndex = getColumnIndex(CatchTable.Columns.LENGTH);
+        mWeightIndex = getColumnIndex(CatchTable.Columns.WEIGHT);
     }
 
     public Catch getCatch() {
-        long date = getLong(getColumnIndex(CatchTable.Columns.DATE));
-        String speciesId = getString(getColumnIndex(CatchTable.Columns.SPECIES_ID));
-        String baitId = getString(getColumnIndex(CatchTable.Columns.BAIT_ID));
-        String fishingSpotId = getString(getColumnIndex(CatchTable.Columns.FISHING_SPOT_ID));
-        String waterClarityId = getString(getColumnIndex(CatchTable.Columns.CLARITY_ID));
-        String notes = getString(getColumnIndex(CatchTable.Columns.NOTES));
-        int catchResult = getInt(getColumnIndex(CatchTable.Columns.CATCH_RESULT));
-        int isFavorite = getInt(getColumnIndex(CatchTable.Columns.IS_FAVORITE));
-        int quantity = getInt(getColumnIndex(CatchTable.Columns.QUANTITY));
-        int waterTemperature = getInt(getColumnIndex(CatchTable.Columns.WATER_TEMPERATURE));
-        float waterDepth = getFloat(getColumnIndex(CatchTable.Columns.WATER_DEPTH));
-        float length = getFloat(getColumnIndex(CatchTable.Columns.LENGTH));
-        float weight = getFloat(getColumnIndex(CatchTable.Columns.WEIGHT));
+        long date = getLong(mDateIndex);
+        String speciesId = getString(mSpeciesIdIndex);
+        String baitId = getString(mBaitIdIndex);
+        String fishingSpotId = getString(mFishingSpotIdIndex);
+        String waterClarityId = getString(mWaterClarityIdIndex);
+        String notes = getString(mNotesIndex);
+        int catchResult = getInt(mCatchResultIndex);
+        int isFavorite = getInt(mIsFavoriteIndex);
+        int quantity = getInt(mQuantityIndex);
+        int waterTemperature = getInt(mWaterTemperatureIndex);
+        float waterDepth = getFloat(mWaterDepthIndex);
+        float length = getFloat(mLengthIndex);
+        float weight = getFloat(mWeightIndex);
 
         Catch aCatch = new Catch(getObject(), true);
         aCatch.setDate(new Date(date));
         aCatch.setIsFavorite(isFavorite == 1);
-        aCatch.setSpecies(Logbook.getSpecies(speciesId));
+        aCatch.setSpeciesReference(getSpecies(speciesId));
         aCatch.setCatchResult(Catch.CatchResult.fromInt(catchResult));
         aCatch.setQuantity(quantity);
         aCatch.setLength(length);
@@ -47,13 +78,13 @@ public class CatchCursor extends UserDefineCursor {
         aCatch.setWaterTemperature(waterTemperature);
 
         if (baitId != null)
-            aCatch.setBait(Logbook.getBait(baitId));
+            aCatch.setBaitReference(getBait(baitId));
 
         if (fishingSpotId != null)
-            aCatch.setFishingSpot(Logbook.getFishingSpot(fishingSpotId));
+            aCatch.setFishingSpotReference(getFishingSpot(fishingSpotId));
 
         if (waterClarityId != null)
-            aCatch.setWaterClarity(Logbook.getWaterClarity(waterClarityId));
+            aCatch.setWaterClarityReference(getWaterClarity(waterClarityId));
 
         if (notes != null)
             aCatch.setNotes(notes);
@@ -61,4 +92,25 @@ public class CatchCursor extends UserDefineCursor {
         return aCatch;
     }
 
+    /**
+     * The following methods create references to the user defines of the current row. By
+     * default, each is looked up in the {@link Logbook} the first time it's used; subclasses that
+     * have the referenced data in the current row can override them to avoid the extra queries.
+     */
+    protected UserDefineReference<Species> getSpecies(String id) {
+        return (id == null) ? null : new UserDefineReference<>(id, Logbook::getSpecies);
+    }
+
+    protected UserDefineReference<Bait> getBait(String id) {
+        return new UserDefineReference<>(id, Logbook::getBait);
+    }
+
+    protected UserDefineReference<FishingSpot> getFishingSpot(String id) {
+        return new UserDefineReference<>(id, Logbook::getFishingSpot);
+    }
+
+    protected UserDefineReference<WaterClarity> getWaterClarity(String id) {
+        return new UserDefineReference<>(id, Logbook::getWaterClarity);
+    }
+
 }
@@ -0,0 +1,151 @@
+package com.cohenadair.mobile.legacy.database.cursors;
+
+import android.database.Cursor;
+
+import com.cohenadair.mobile.legacy.user_defines.Bait;
+import com.cohenadair.mobile.legacy.user_defines.BaitCategory;
+import com.cohenadair.mobile.legacy.user_defines.FishingSpot;
+import com.cohenadair.mobile.legacy.user_defines.Location;
+import com.cohenadair.mobile.legacy.user_defines.Species;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineReference;
+import com.cohenadair.mobile.legacy.user_defines.WaterClarity;
+
+
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitCategoryTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.LocationTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.SpeciesTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.WaterClarityTable;
+
+/**
+ * A {@link CatchCursor} for rows returned by
+ * {@link com.cohenadair.mobile.legacy.database.QueryHelper#queryCatchGraph(String, String[])}.
+ * Each row includes the {@link Species}, {@link Bait}, {@link BaitCategory},
+ * {@link FishingSpot}, {@link Location} and {@link WaterClarity} columns of the catch, so the
+ * entire {@link com.cohenadair.mobile.legacy.user_defines.Catch} can be built without any
+ * additional queries.
+ *
+ * @author Cohen Adair
+ */
+public class CatchGraphCursor extends CatchCursor {
+    private final JoinedColumns mSpecies;
+    private final JoinedColumns mBait;
+    private final JoinedColumns mBaitCategory;
+    private final JoinedColumns mFishingSpot;
+    private final JoinedColumns mLocation;
+    private final JoinedColumns mWaterClarity;
+
+    private final int mBaitColorIndex;
+    private final int mBaitSizeIndex;
+    private final int mBaitDescriptionIndex;
+    private final int mBaitTypeIndex;
+    private final int mFishingSpotLatitudeIndex;
+    private final int mFishingSpotLongitudeIndex;
+    private final int mFishingSpotLocationIdIndex;
+
+    /**
+     * The indexes of a joined table's id and name columns.
+     */
+    private class JoinedColumns {
+        final int idIndex;
+        final int nameIndex;
+
+        JoinedColumns(String table) {
+            idIndex = getColumnIndex(alias(table, UserDefineTable.Columns.ID));
+            nameIndex = getColumnIndex(alias(table, UserDefineTable.Columns.NAME));
+        }
+    }
+
+    public CatchGraphCursor(Cursor cursor) {
+        super(cursor);
+
+        mSpecies = new JoinedColumns(SpeciesTable.NAME);
+        mBait = new JoinedColumns(BaitTable.NAME);
+        mBaitCategory = new JoinedColumns(BaitCategoryTable.NAME);
+        mFishingSpot = new JoinedColumns(FishingSpotTable.NAME);
+        mLocation = new JoinedColumns(LocationTable.NAME);
+        mWaterClarity = new JoinedColumns(WaterClarityTable.NAME);
+
+        mBaitColorIndex = getColumnIndex(alias(BaitTable.NAME, BaitTable.Columns.COLOR));
+        mBaitSizeIndex = getColumnIndex(alias(BaitTable.NAME, BaitTable.Columns.SIZE));
+        mBaitDescriptionIndex = getColumnIndex(alias(BaitTable.NAME, BaitTable.Columns.DESCRIPTION));
+        mBaitTypeIndex = getColumnIndex(alias(BaitTable.NAME, BaitTable.Columns.TYPE));
+        mFishingSpotLatitudeIndex = getColumnIndex(alias(FishingSpotTable.NAME, FishingSpotTable.Columns.LATITUDE));
+        mFishingSpotLongitudeIndex = getColumnIndex(alias(FishingSpotTable.NAME, FishingSpotTable.Columns.LONGITUDE));
+        mFishingSpotLocationIdIndex = getColumnIndex(alias(FishingSpotTable.NAME, FishingSpotTable.Columns.LOCATION_ID));
+    }
+
+    /**
+     * @return The name of the column a joined table's column is selected as. For example,
+     *         "Species_name".
+     */
+    public static String alias(String table, String column) {
+        return table + "_" + column;
+    }
+
+    @Override
+    protected UserDefineReference<Species> getSpecies(String id) {
+        UserDefineObject obj = getJoinedObject(mSpecies);
+        return (obj == null) ? null : UserDefineReference.of(new Species(obj, true));
+    }
+
+    @Override
+    protected UserDefineReference<Bait> getBait(String id) {
+        UserDefineObject obj = getJoinedObject(mBait);
+        if (obj == null)
+            return null;
+
+        Bait bait = new Bait(obj, true);
+
+        UserDefineObject category = getJoinedObject(mBaitCategory);
+        bait.setCategory((category == null) ? null : new BaitCategory(category, true));
+        bait.setColor(getString(mBaitColorIndex));
+        bait.setSize(getString(mBaitSizeIndex));
+        bait.setDescription(getString(mBaitDescriptionIndex));
+        bait.setType(getInt(mBaitTypeIndex));
+
+        return UserDefineReference.of(bait);
+    }
+
+    @Override
+    protected UserDefineReference<FishingSpot> getFishingSpot(String id) {
+        UserDefineObject obj = getJoinedObject(mFishingSpot);
+        if (obj == null)
+            return null;
+
+        FishingSpot fishingSpot = new FishingSpot(obj, true);
+        fishingSpot.setLatitude(getDouble(mFishingSpotLatitudeIndex));
+        fishingSpot.setLongitude(getDouble(mFishingSpotLongitudeIndex));
+        fishingSpot.setLocationId(UserDefineId.fromString(getString(mFishingSpotLocationIdIndex)));
+
+        // a missing location is left unset so it's looked up the same way it would be otherwise
+        UserDefineObject location = getJoinedObject(mLocation);
+        if (location != null)
+            fishingSpot.setLocation(new Location(location, true));
+
+        return UserDefineReference.of(fishingSpot);
+    }
+
+    @Override
+    protected UserDefineReference<WaterClarity> getWaterClarity(String id) {
+        UserDefineObject obj = getJoinedObject(mWaterClarity);
+        return (obj == null) ? null : UserDefineReference.of(new WaterClarity(obj, true));
+    }
+
+    /**
+     * @return A {@link UserDefineObject} from the given joined table's id and name columns, or
+     *         null if the LEFT JOIN didn't match a row.
+     */
+    private UserDefineObject getJoinedObject(JoinedColumns columns) {
+        String id = getString(columns.idIndex);
+        if (id == null)
+            return null;
+
+        return new UserDefineObject(getString(columns.nameIndex), UserDefineId.fromString(id));
+    }
+
+}
@@ -4,25 +4,31 @@ import android.database.Cursor;
 
 import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
 import com.cohenadair.mobile.legacy.user_defines.FishingSpot;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
 
-import java.util.UUID;
 
 /**
  * A {@link Cursor} wrapper for the {@link FishingSpot} object.
  * @author Cohen Adair
  */
 public class FishingSpotCursor extends UserDefineCursor {
+    private final int mLatitudeIndex;
+    private final int mLongitudeIndex;
+    private final int mLocationIdIndex;
 
     public FishingSpotCursor(Cursor cursor) {
         super(cursor);
+        mLatitudeIndex = getColumnIndex(FishingSpotTable.Columns.LATITUDE);
+        mLongitudeIndex = getColumnIndex(FishingSpotTable.Columns.LONGITUDE);
+        mLocationIdIndex = getColumnIndex(FishingSpotTable.Columns.LOCATION_ID);
     }
 
     public FishingSpot getFishingSpot() {
         FishingSpot fishingSpot = new FishingSpot(getObject(), true);
 
-        fishingSpot.setLatitude(getDouble(getColumnIndex(FishingSpotTable.Columns.LATITUDE)));
-        fishingSpot.setLongitude(getDouble(getColumnIndex(FishingSpotTable.Columns.LONGITUDE)));
-        fishingSpot.setLocationId(UUID.fromString(getString(getColumnIndex(FishingSpotTable.Columns.LOCATION_ID))));
+        fishingSpot.setLatitude(getDouble(mLatitudeIndex));
+        fishingSpot.setLongitude(getDouble(mLongitudeIndex));
+        fishingSpot.setLocationId(UserDefineId.fromString(getString(mLocationIdIndex)));
 
         return fishingSpot;
     }
@@ -2,7 +2,6 @@ package com.cohenadair.mobile.legacy.database.cursors;
 
 import android.database.Cursor;
 
-import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchTable;
 import com.cohenadair.mobile.legacy.database.LogbookSchema.TripTable;
 import com.cohenadair.mobile.legacy.user_defines.Trip;
 
@@ -14,17 +13,23 @@ import java.util.Date;
  * @author Cohen Adair
  */
 public class TripCursor extends UserDefineCursor {
+    private final int mStartDateIndex;
+    private final int mEndDateIndex;
+    private final int mNotesIndex;
 
     public TripCursor(Cursor cursor) {
         super(cursor);
+        mStartDateIndex = getColumnIndex(TripTable.Columns.START_DATE);
+        mEndDateIndex = getColumnIndex(TripTable.Columns.END_DATE);
+        mNotesIndex = getColumnIndex(TripTable.Columns.NOTES);
     }
 
     public Trip getTrip() {
         Trip trip = new Trip(getObject(), true);
 
-        trip.setStartDate(new Date(getLong(getColumnIndex(TripTable.Columns.START_DATE))));
-        trip.setEndDate(new Date(getLong(getColumnIndex(TripTable.Columns.END_DATE))));
-        trip.setNotes(getString(getColumnIndex(CatchTable.Columns.NOTES)));
+        trip.setStartDate(new Date(getLong(mStartDateIndex)));
+        trip.setEndDate(new Date(getLong(mEndDateIndex)));
+        trip.setNotes(getString(mNotesIndex));
 
         return trip;
     }
@@ -4,29 +4,34 @@ import android.database.Cursor;
 import android.database.CursorWrapper;
 
 import com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTable;
+import com.cohenadair.mobile.legacy.user_defines.UserDefineId;
 import com.cohenadair.mobile.legacy.user_defines.UserDefineObject;
 
-import java.util.UUID;
 
 /**
  * A {@link Cursor} wrapper for the {@link UserDefineObject} object.
  *
+ * Column indexes are looked up once, when the cursor is created, rather than for every row.
+ * Subclasses should do the same for their own columns, and should be created once per query,
+ * not once per row.
+ *
  * @author Cohen Adair
  */
 public class UserDefineCursor extends CursorWrapper {
+    private final int mIdIndex;
+    private final int mNameIndex;
 
     public UserDefineCursor(Cursor cursor) {
         super(cursor);
+        mIdIndex = getColumnIndex(UserDefineTable.Columns.ID);
+        mNameIndex = getColumnIndex(UserDefineTable.Columns.NAME);
     }
 
     public UserDefineObject getObject() {
-        String id = getString(getColumnIndex(UserDefineTable.Columns.ID));
-        String name = getString(getColumnIndex(UserDefineTable.Columns.NAME));
-
-        UserDefineObject obj = new UserDefineObject(name);
-        obj.setId(UUID.fromString(id));
+        String id = getString(mIdIndex);
+        String name = getString(mNameIndex);
 
-        return obj;
+        return new UserDefineObject(name, UserDefineId.fromString(id));
     }
 
 }
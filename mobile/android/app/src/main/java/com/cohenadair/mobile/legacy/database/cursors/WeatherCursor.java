@@ -11,16 +11,22 @@ import com.cohenadair.mobile.legacy.database.LogbookSchema.WeatherTable;
  * @author Cohen Adair
  */
 public class WeatherCursor extends CursorWrapper {
+    private final int mTemperatureIndex;
+    private final int mWindSpeedIndex;
+    private final int mSkyConditionsIndex;
 
     public WeatherCursor(Cursor cursor) {
         super(cursor);
+        mTemperatureIndex = getColumnIndex(WeatherTable.Columns.TEMPERATURE);
+        mWindSpeedIndex = getColumnIndex(WeatherTable.Columns.WIND_SPEED);
+        mSkyConditionsIndex = getColumnIndex(WeatherTable.Columns.SKY_CONDITIONS);
     }
 
     public Weather getWeather() {
         return new Weather(
-                getInt(getColumnIndex(WeatherTable.Columns.TEMPERATURE)),
-                getInt(getColumnIndex(WeatherTable.Columns.WIND_SPEED)),
-                getString(getColumnIndex(WeatherTable.Columns.SKY_CONDITIONS))
+                getInt(mTemperatureIndex),
+                getInt(mWindSpeedIndex),
+                getString(mSkyConditionsIndex)
         );
     }
 
@@ -8,7 +8,6 @@ import com.cohenadair.mobile.legacy.Utils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.UUID;
 
 import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
 import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
@@ -18,7 +17,7 @@ import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
  * @author Cohen Adair
  */
 public class Bait extends PhotoUserDefineObject {
-    private BaitCategory mCategory;
+    private UserDefineReference<BaitCategory> mCategory;
     private String mColor;
     private String mSize;
     private String mDescription;
@@ -27,7 +26,7 @@ public class Bait extends PhotoUserDefineObject {
     //region Constructors
     public Bait(Bait bait, boolean keepId) {
         super(bait, keepId);
-        mCategory = new BaitCategory(bait.getCategory(), true);
+        mCategory = UserDefineReference.copyOf(bait.mCategory);
         mColor = bait.getColor();
         mSize = bait.getSize();
         mDescription = bait.getDescription();
@@ -42,10 +41,14 @@ public class Bait extends PhotoUserDefineObject {
 
     //region Getters & Setters
     public BaitCategory getCategory() {
-        return mCategory;
+        return (mCategory == null) ? null : mCategory.get();
     }
 
     public void setCategory(BaitCategory category) {
+        mCategory = UserDefineReference.of(category);
+    }
+
+    public void setCategoryReference(UserDefineReference<BaitCategory> category) {
         mCategory = category;
     }
 
@@ -82,12 +85,19 @@ public class Bait extends PhotoUserDefineObject {
     }
     //endregion
 
-    public UUID getCategoryId() {
+    public UserDefineId getCategoryId() {
         if (mCategory != null)
-            return mCategory.getId();
+            return UserDefineId.fromString(mCategory.getId());
         return null;
     }
 
+    /**
+     * @return The category's id, without parsing it or reading the category.
+     */
+    public String getCategoryIdAsString() {
+        return (mCategory == null) ? null : mCategory.getId();
+    }
+
     public String getColorAsString() {
         return Utils.emptyStringOrString(mColor);
     }
@@ -107,7 +117,7 @@ public class Bait extends PhotoUserDefineObject {
         values.put(BaitTable.Columns.DESCRIPTION, mDescription);
         values.put(BaitTable.Columns.SIZE, mSize);
         values.put(BaitTable.Columns.TYPE, mType);
-        values.put(BaitTable.Columns.CATEGORY_ID, mCategory.getIdAsString());
+        values.put(BaitTable.Columns.CATEGORY_ID, mCategory.getId());
 
         return values;
     }
@@ -119,7 +129,7 @@ public class Bait extends PhotoUserDefineObject {
     public JSONObject toJson() throws JSONException {
         JSONObject json = super.toJson();
 
-        json.put(Json.BAIT_CATEGORY, mCategory.getIdAsString());
+        json.put(Json.BAIT_CATEGORY, mCategory.getId());
         json.put(Json.COLOR, getColorAsString());
         json.put(Json.SIZE, getSizeAsString());
         json.put(Json.BAIT_DESCRIPTION, getDescriptionAsString());
@@ -29,12 +29,12 @@ import static com.cohenadair.mobile.legacy.database.LogbookSchema.WeatherTable;
  */
 public class Catch extends PhotoUserDefineObject implements HasDateInterface {
     private Date mDate;
-    private Species mSpecies;
+    private UserDefineReference<Species> mSpecies;
     private boolean mIsFavorite;
-    private Bait mBait;
-    private FishingSpot mFishingSpot;
+    private UserDefineReference<Bait> mBait;
+    private UserDefineReference<FishingSpot> mFishingSpot;
     private CatchResult mCatchResult = CatchResult.RELEASED;
-    private WaterClarity mWaterClarity;
+    private UserDefineReference<WaterClarity> mWaterClarity;
     private float mWaterDepth = -1;
     private int mWaterTemperature = -1;
     private int mQuantity = 1;
@@ -42,6 +42,9 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
     private float mWeight = -1;
     private String mNotes;
 
+    // derived values that are used several times per export
+    private String mDateJsonString;
+
     // utility objects used for database accessing
     private UsedUserDefineObject mUsedFishingMethods;
 
@@ -85,7 +88,10 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
         super(aCatch, keepId);
         mDate = new Date(aCatch.getDate().getTime());
         mIsFavorite = aCatch.isFavorite();
-        mSpecies = new Species(aCatch.getSpecies(), true);
+        mSpecies = UserDefineReference.copyOf(aCatch.mSpecies);
+        mBait = UserDefineReference.copyOf(aCatch.mBait);
+        mFishingSpot = UserDefineReference.copyOf(aCatch.mFishingSpot);
+        mWaterClarity = UserDefineReference.copyOf(aCatch.mWaterClarity);
         mCatchResult = aCatch.getCatchResult();
         mQuantity = aCatch.getQuantity();
         mLength = aCatch.getLength();
@@ -94,15 +100,6 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
         mWaterTemperature = aCatch.getWaterTemperature();
         mNotes = aCatch.getNotes();
 
-        if (aCatch.getBait() != null)
-            mBait = new Bait(aCatch.getBait(), true);
-
-        if (aCatch.getFishingSpot() != null)
-            mFishingSpot = new FishingSpot(aCatch.getFishingSpot(), true);
-
-        if (aCatch.getWaterClarity() != null)
-            mWaterClarity = new WaterClarity(aCatch.getWaterClarity(), true);
-
         init();
     }
 
@@ -131,13 +128,18 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
 
     public void setDate(Date date) {
         mDate = date;
+        mDateJsonString = null;
     }
 
     public Species getSpecies() {
-        return mSpecies;
+        return (mSpecies == null) ? null : mSpecies.get();
     }
 
     public void setSpecies(Species species) {
+        mSpecies = UserDefineReference.of(species);
+    }
+
+    public void setSpeciesReference(UserDefineReference<Species> species) {
         mSpecies = species;
     }
 
@@ -150,26 +152,38 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
     }
 
     public Bait getBait() {
-        return mBait;
+        return (mBait == null) ? null : mBait.get();
     }
 
     public void setBait(Bait bait) {
+        mBait = UserDefineReference.of(bait);
+    }
+
+    public void setBaitReference(UserDefineReference<Bait> bait) {
         mBait = bait;
     }
 
     public FishingSpot getFishingSpot() {
-        return mFishingSpot;
+        return (mFishingSpot == null) ? null : mFishingSpot.get();
     }
 
     public void setFishingSpot(FishingSpot fishingSpot) {
+        mFishingSpot = UserDefineReference.of(fishingSpot);
+    }
+
+    public void setFishingSpotReference(UserDefineReference<FishingSpot> fishingSpot) {
         mFishingSpot = fishingSpot;
     }
 
     public WaterClarity getWaterClarity() {
-        return mWaterClarity;
+        return (mWaterClarity == null) ? null : mWaterClarity.get();
     }
 
     public void setWaterClarity(WaterClarity waterClarity) {
+        mWaterClarity = UserDefineReference.of(waterClarity);
+    }
+
+    public void setWaterClarityReference(UserDefineReference<WaterClarity> waterClarity) {
         mWaterClarity = waterClarity;
     }
 
@@ -238,7 +252,7 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
 
     //region Weather Manipulation
     public Weather getWeather() {
-        return QueryHelper.queryWeather(getId());
+        return Logbook.getWeather(getId());
     }
 
     public boolean removeWeather() {
@@ -252,15 +266,23 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
     }
 
     public String getSpeciesAsString() {
-        return (mSpecies != null) ? mSpecies.getName() : "";
+        Species species = getSpecies();
+        return (species != null) ? species.getName() : "";
     }
 
     public String getWaterClarityAsString() {
-        return (mWaterClarity != null) ? mWaterClarity.getName() : "";
+        WaterClarity waterClarity = getWaterClarity();
+        return (waterClarity != null) ? waterClarity.getName() : "";
     }
 
-    String getDateJsonString() {
-        return JsonExporter.dateToString(mDate);
+    /**
+     * @return The date formatted for exporting. The result is kept, since it's used for the
+     *         Catch itself, each of its photos and its weather.
+     */
+    public String getDateJsonString() {
+        if (mDateJsonString == null)
+            mDateJsonString = JsonExporter.dateToString(mDate);
+        return mDateJsonString;
     }
 
     /**
@@ -272,7 +294,7 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
 
         values.put(CatchTable.Columns.DATE, mDate.getTime());
         values.put(CatchTable.Columns.IS_FAVORITE, mIsFavorite ? 1 : 0);
-        values.put(CatchTable.Columns.SPECIES_ID, mSpecies.getIdAsString());
+        values.put(CatchTable.Columns.SPECIES_ID, mSpecies.getId());
         values.put(CatchTable.Columns.CATCH_RESULT, mCatchResult.getValue());
         values.put(CatchTable.Columns.QUANTITY, mQuantity);
         values.put(CatchTable.Columns.LENGTH, mLength);
@@ -281,13 +303,13 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
         values.put(CatchTable.Columns.WATER_TEMPERATURE, mWaterTemperature);
 
         if (mBait != null)
-            values.put(CatchTable.Columns.BAIT_ID, mBait.getIdAsString());
+            values.put(CatchTable.Columns.BAIT_ID, mBait.getId());
 
         if (mFishingSpot != null)
-            values.put(CatchTable.Columns.FISHING_SPOT_ID, mFishingSpot.getIdAsString());
+            values.put(CatchTable.Columns.FISHING_SPOT_ID, mFishingSpot.getId());
 
         if (mWaterClarity != null)
-            values.put(CatchTable.Columns.CLARITY_ID, mWaterClarity.getIdAsString());
+            values.put(CatchTable.Columns.CLARITY_ID, mWaterClarity.getId());
 
         if (mNotes != null)
             values.put(CatchTable.Columns.NOTES, mNotes);
@@ -304,23 +326,36 @@ public class Catch extends PhotoUserDefineObject implements HasDateInterface {
 
         json.put(Json.DATE, getDateJsonString());
         json.put(Json.IS_FAVORITE, mIsFavorite);
-        json.put(Json.FISH_SPECIES, getSpeciesAsString());
+        JsonExporter.putString(json, Json.FISH_SPECIES, getSpeciesAsString());
         json.put(Json.FISH_RESULT, mCatchResult.getValue());
         json.put(Json.FISH_QUANTITY, mQuantity);
         json.put(Json.FISH_LENGTH, mLength);
         json.put(Json.FISH_WEIGHT, mWeight);
         json.put(Json.WATER_DEPTH, mWaterDepth);
         json.put(Json.WATER_TEMPERATURE, mWaterTemperature);
-        json.put(Json.WATER_CLARITY, getWaterClarityAsString());
-        json.put(Json.BAIT_USED, mBait == null ? "" : mBait.getName());
-        json.put(Json.BAIT_CATEGORY, mBait == null ? "" : mBait.getCategoryId().toString());
-        json.put(Json.LOCATION, mFishingSpot == null ? "" : mFishingSpot.getLocationName());
-        json.put(Json.FISHING_SPOT, mFishingSpot == null ? "" : mFishingSpot.getName());
+        JsonExporter.putString(json, Json.WATER_CLARITY, getWaterClarityAsString());
+
+        Bait bait = getBait();
+        JsonExporter.putString(json, Json.BAIT_USED, bait == null ? "" : bait.getName());
+
+        if (!JsonExporter.isCompact())
+            JsonExporter.putString(json, Json.BAIT_CATEGORY, bait == null ? "" : bait.getCategoryIdAsString());
+
+        if (JsonExporter.isCompact()) {
+            // the fishing spot doesn't need to be resolved to get its ID
+            json.put(Json.FISHING_SPOT_ID, mFishingSpot == null ? "" : mFishingSpot.getId());
+        } else {
+            FishingSpot fishingSpot = getFishingSpot();
+            JsonExporter.putString(json, Json.LOCATION, fishingSpot == null ? "" : fishingSpot.getLocationName());
+            JsonExporter.putString(json, Json.FISHING_SPOT, fishingSpot == null ? "" : fishingSpot.getName());
+        }
+
         json.put(Json.NOTES, mNotes == null ? "" : mNotes);
-        json.put(Json.FISHING_METHOD_NAMES, JsonExporter.getNameJsonArray(getFishingMethods()));
+        JsonExporter.putNames(json, Json.FISHING_METHOD_NAMES, getFishingMethods());
 
         // for iOS compatibility
-        json.put(Json.JOURNAL, Logbook.getName());
+        if (!JsonExporter.isCompact())
+            JsonExporter.putString(json, Json.JOURNAL, Logbook.getName());
 
         // weather data
         Weather weather = getWeather();
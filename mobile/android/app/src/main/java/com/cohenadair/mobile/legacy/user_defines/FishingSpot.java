@@ -2,11 +2,11 @@ package com.cohenadair.mobile.legacy.user_defines;
 
 import com.cohenadair.mobile.legacy.Logbook;
 import com.cohenadair.mobile.legacy.backup.Json;
+import com.cohenadair.mobile.legacy.backup.JsonExporter;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.UUID;
 
 /**
  * The FishingSpot object stores information on a single fishing spot (not an entire location);
@@ -15,13 +15,16 @@ import java.util.UUID;
 public class FishingSpot extends UserDefineObject {
     private double mLatitude = 0.0;
     private double mLongitude = 0.0;
-    private UUID mLocationId;
+    private UserDefineId mLocationId;
+    private UserDefineReference<Location> mLocation;
+    private String mDisplayName; // kept until the name or location changes
 
     public FishingSpot(FishingSpot fishingSpot, boolean keepId) {
         super(fishingSpot, keepId);
         mLatitude = fishingSpot.getLatitude();
         mLongitude = fishingSpot.getLongitude();
         mLocationId = fishingSpot.getLocationId();
+        mLocation = UserDefineReference.copyOf(fishingSpot.mLocation);
     }
 
     public FishingSpot(UserDefineObject obj, boolean keepId) {
@@ -45,17 +48,34 @@ public class FishingSpot extends UserDefineObject {
         mLongitude = longitude;
     }
 
-    public UUID getLocationId() {
+    public UserDefineId getLocationId() {
         return mLocationId;
     }
 
-    public void setLocationId(UUID locationId) {
+    public void setLocationId(UserDefineId locationId) {
         mLocationId = locationId;
+        mLocation = (locationId == null) ? null : new UserDefineReference<>(locationId.toString(), Logbook::getLocation);
+        mDisplayName = null;
+    }
+
+    /**
+     * Sets the {@link Location} this FishingSpot belongs to, if it has already been read from
+     * the database, so {@link #getLocation()} doesn't have to query for it.
+     */
+    public void setLocation(Location location) {
+        mLocation = UserDefineReference.of(location);
+        mDisplayName = null;
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        mDisplayName = null;
     }
     //endregion
 
     public Location getLocation() {
-        return Logbook.getLocation(mLocationId.toString());
+        return mLocation.get();
     }
 
     public String getLocationName() {
@@ -64,7 +84,9 @@ public class FishingSpot extends UserDefineObject {
 
     @Override
     public String getDisplayName() {
-        return getLocationName() + " - " + getName();
+        if (mDisplayName == null)
+            mDisplayName = getLocationName() + " - " + getName();
+        return mDisplayName;
     }
 
     /**
@@ -80,7 +102,8 @@ public class FishingSpot extends UserDefineObject {
         json.put(Json.COORDINATES, coordinates);
 
         // for iOS Core Data compatibility
-        json.put(Json.LOCATION, getLocationName());
+        if (!JsonExporter.isCompact())
+            JsonExporter.putString(json, Json.LOCATION, getLocationName());
 
         return json;
     }
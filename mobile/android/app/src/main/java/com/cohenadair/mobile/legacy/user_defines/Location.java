@@ -1,7 +1,6 @@
 package com.cohenadair.mobile.legacy.user_defines;
 
-import com.cohenadair.mobile.legacy.database.QueryHelper;
-import com.cohenadair.mobile.legacy.database.cursors.FishingSpotCursor;
+import com.cohenadair.mobile.legacy.Logbook;
 import com.cohenadair.mobile.legacy.backup.Json;
 import com.cohenadair.mobile.legacy.backup.JsonExporter;
 
@@ -10,8 +9,6 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 
-import static com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
-
 /**
  * The Location object stores information on a single location, including many fishing spots
  * within that location.
@@ -25,13 +22,7 @@ public class Location extends UserDefineObject {
 
     //region Fishing Spot Manipulation
     public ArrayList<UserDefineObject> getFishingSpots() {
-        return QueryHelper.queryUserDefines(
-                QueryHelper.queryUserDefines(
-                        FishingSpotTable.NAME,
-                        FishingSpotTable.Columns.LOCATION_ID + " = ?", new String[]{getIdAsString()}
-                ),
-                cursor -> new FishingSpotCursor(cursor).getFishingSpot()
-        );
+        return Logbook.getFishingSpots(getIdAsString());
     }
     //endregion
 
@@ -2,19 +2,27 @@ package com.cohenadair.mobile.legacy.user_defines;
 
 import com.cohenadair.mobile.legacy.database.QueryHelper;
 import com.cohenadair.mobile.legacy.backup.Json;
+import com.cohenadair.mobile.legacy.backup.JsonExporter;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.HashMap;
+
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+import static com.cohenadair.mobile.legacy.database.LogbookSchema.CatchTable;
 
 /**
  * An abstract class for a UserDefineObject subclass that includes photos added by the user.
  * @author Cohen Adair
  */
 public abstract class PhotoUserDefineObject extends UserDefineObject {
+    private static HashMap<String, HashMap<String, ArrayList<String>>> sPhotoMap;
+
     private String mPhotoTable;
 
     //region Constructors
@@ -52,14 +60,37 @@ public abstract class PhotoUserDefineObject extends UserDefineObject {
     //endregion
 
     //region Photo Manipulation
+    /**
+     * Reads every Catch and Bait photo into memory, one query per table. Until
+     * {@link #closePhotoMap()} is called, {@link #getPhotos(UserDefineId)} doesn't query the database.
+     * This should be used for operations that read the entire Logbook, such as exporting.
+     */
+    public static void openPhotoMap() {
+        sPhotoMap = new HashMap<>();
+        sPhotoMap.put(CatchPhotoTable.NAME, QueryHelper.queryPhotos(CatchPhotoTable.NAME, CatchTable.NAME));
+        sPhotoMap.put(BaitPhotoTable.NAME, QueryHelper.queryPhotos(BaitPhotoTable.NAME, BaitTable.NAME));
+    }
+
+    public static void closePhotoMap() {
+        sPhotoMap = null;
+    }
+
     public ArrayList<String> getPhotos() {
         return getPhotos(getId());
     }
 
     /**
-     * @return An array of photos associated with the given id.
+     * @return An array of photos associated with the given id. The array is a copy, so it can be
+     *         modified even while the photo map is open.
      */
-    public ArrayList<String> getPhotos(UUID id) {
+    public ArrayList<String> getPhotos(UserDefineId id) {
+        HashMap<String, HashMap<String, ArrayList<String>>> photoMap = sPhotoMap;
+
+        if (photoMap != null && photoMap.containsKey(mPhotoTable)) {
+            ArrayList<String> photos = photoMap.get(mPhotoTable).get(id.toString());
+            return (photos == null) ? new ArrayList<>() : new ArrayList<>(photos);
+        }
+
         return QueryHelper.queryPhotos(mPhotoTable, id);
     }
 
@@ -105,8 +136,10 @@ public abstract class PhotoUserDefineObject extends UserDefineObject {
             jsonPhoto.put(Json.IMAGE_PATH, "Images/" + photo);
 
             // these are for iOS Core Data compatibility
-            jsonPhoto.put(Json.ENTRY_DATE, isCatch ? ((Catch) this).getDateJsonString() : "");
-            jsonPhoto.put(Json.BAIT_NAME, isCatch ? "" : getNameAsString());
+            if (!JsonExporter.isCompact()) {
+                jsonPhoto.put(Json.ENTRY_DATE, isCatch ? ((Catch) this).getDateJsonString() : "");
+                jsonPhoto.put(Json.BAIT_NAME, isCatch ? "" : getNameAsString());
+            }
         }
 
         return jsonPhoto;
@@ -4,10 +4,10 @@ import android.content.ContentValues;
 
 import com.cohenadair.mobile.legacy.Logbook;
 import com.cohenadair.mobile.legacy.backup.Json;
-import com.cohenadair.mobile.legacy.backup.JsonExporter;
 import com.cohenadair.mobile.legacy.HasDateInterface;
 import com.cohenadair.mobile.legacy.UsedUserDefineObject;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -78,18 +78,30 @@ public class Trip extends UserDefineObject implements HasDateInterface {
     public ArrayList<UserDefineObject> getAnglers() {
         return mUsedAnglers.getObjects(Logbook::getAngler);
     }
+
+    public ArrayList<String> getAnglerIds() {
+        return mUsedAnglers.getIds();
+    }
     //endregion
 
     //region Location Manipulation
     public ArrayList<UserDefineObject> getLocations() {
         return mUsedLocations.getObjects(Logbook::getLocation);
     }
+
+    public ArrayList<String> getLocationIds() {
+        return mUsedLocations.getIds();
+    }
     //endregion
 
     //region Catch Manipulation
     public ArrayList<UserDefineObject> getCatches() {
         return mUsedCatches.getObjects(Logbook::getCatch);
     }
+
+    public ArrayList<String> getCatchIds() {
+        return mUsedCatches.getIds();
+    }
     //endregion
 
     public String getNotesAsString() {
@@ -122,9 +134,9 @@ public class Trip extends UserDefineObject implements HasDateInterface {
         json.put(Json.START_DATE, mStartDate.getTime());
         json.put(Json.END_DATE, mEndDate.getTime());
         json.put(Json.NOTES, getNotesAsString());
-        json.put(Json.CATCHES, JsonExporter.getIdJsonArray(getCatches()));
-        json.put(Json.LOCATIONS, JsonExporter.getIdJsonArray(getLocations()));
-        json.put(Json.ANGLERS, JsonExporter.getIdJsonArray(getAnglers()));
+        json.put(Json.CATCHES, new JSONArray(getCatchIds()));
+        json.put(Json.LOCATIONS, new JSONArray(getLocationIds()));
+        json.put(Json.ANGLERS, new JSONArray(getAnglerIds()));
 
         return json;
     }
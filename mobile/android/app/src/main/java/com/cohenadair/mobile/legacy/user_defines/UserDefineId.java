@@ -0,0 +1,150 @@
+package com.cohenadair.mobile.legacy.user_defines;
+
+import androidx.annotation.NonNull;
+
+import java.util.UUID;
+
+/**
+ * A UserDefineId is the id of a {@link UserDefineObject}. Like {@link UUID}, it's stored as two
+ * longs, but its canonical string and 16 byte forms are created when first needed, and kept.
+ * Ids are shared between export threads, so the kept forms are volatile; two threads may both
+ * create one, but neither sees a partly built array.
+ *
+ * Ids read from the database are already canonical strings, so {@link #fromString(String)} keeps
+ * the given string rather than formatting it again.
+ *
+ * @author Cohen Adair
+ */
+public final class UserDefineId {
+    private static final int STRING_LENGTH = 36;
+
+    private final long mMostSigBits;
+    private final long mLeastSigBits;
+
+    private volatile String mString;
+    private volatile byte[] mBytes;
+
+    private UserDefineId(long mostSigBits, long leastSigBits, String string) {
+        mMostSigBits = mostSigBits;
+        mLeastSigBits = leastSigBits;
+        mString = string;
+    }
+
+    @NonNull
+    public static UserDefineId random() {
+        return of(UUID.randomUUID());
+    }
+
+    @NonNull
+    public static UserDefineId of(@NonNull UUID uuid) {
+        return new UserDefineId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), null);
+    }
+
+    /**
+     * @param string A UUID string, such as "0f8fad5b-d9cb-469f-a165-70867728950e".
+     * @throws IllegalArgumentException If string isn't a valid UUID.
+     */
+    @NonNull
+    public static UserDefineId fromString(@NonNull String string) {
+        if (!isCanonical(string))
+            return of(UUID.fromString(string));
+
+        long mostSigBits = (parseHex(string, 0, 8) << 32)
+                | (parseHex(string, 9, 13) << 16)
+                | parseHex(string, 14, 18);
+
+        long leastSigBits = (parseHex(string, 19, 23) << 48)
+                | parseHex(string, 24, 36);
+
+        return new UserDefineId(mostSigBits, leastSigBits, string);
+    }
+
+    /**
+     * @return True if the given string is formatted exactly as {@link UUID#toString()} would
+     *         format it.
+     */
+    private static boolean isCanonical(String string) {
+        if (string.length() != STRING_LENGTH)
+            return false;
+
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            char c = string.charAt(i);
+
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-')
+                    return false;
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseHex(String string, int start, int end) {
+        long result = 0;
+
+        for (int i = start; i < end; i++)
+            result = (result << 4) | Character.digit(string.charAt(i), 16);
+
+        return result;
+    }
+
+    @NonNull
+    public UUID toUUID() {
+        return new UUID(mMostSigBits, mLeastSigBits);
+    }
+
+    /**
+     * @return The big-endian 16 byte form of this id. The returned array is shared, and must not
+     *         be modified.
+     */
+    @NonNull
+    public byte[] getBytes() {
+        byte[] bytes = mBytes;
+
+        if (bytes == null) {
+            bytes = new byte[16];
+
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (mMostSigBits >>> (8 * (7 - i)));
+                bytes[i + 8] = (byte) (mLeastSigBits >>> (8 * (7 - i)));
+            }
+
+            mBytes = bytes;
+        }
+
+        return bytes;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String string = mString;
+
+        if (string == null) {
+            string = toUUID().toString();
+            mString = string;
+        }
+
+        return string;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof UserDefineId))
+            return false;
+
+        UserDefineId other = (UserDefineId) obj;
+        return mMostSigBits == other.mMostSigBits && mLeastSigBits == other.mLeastSigBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = mMostSigBits ^ mLeastSigBits;
+        return ((int) (bits >> 32)) ^ (int) bits;
+    }
+}
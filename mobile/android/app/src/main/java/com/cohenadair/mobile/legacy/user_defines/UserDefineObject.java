@@ -10,8 +10,6 @@ import com.cohenadair.mobile.legacy.backup.Json;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.UUID;
-
 import static com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTable;
 
 /**
@@ -21,17 +19,17 @@ import static com.cohenadair.mobile.legacy.database.LogbookSchema.UserDefineTabl
 public class UserDefineObject {
     private static final String TAG = "UserDefineObject";
 
-    private UUID mId;
+    private UserDefineId mId;
     private String mName;
     private boolean mShouldDelete; // toggled on UI selection for deleting multiple items
     private boolean mIsSelected; // used to show selection in RecyclerView layouts
 
     public UserDefineObject(String name) {
-        mId = UUID.randomUUID();
+        mId = UserDefineId.random();
         mName = name;
     }
 
-    public UserDefineObject(String name, UUID id) {
+    public UserDefineObject(String name, UserDefineId id) {
         mId = id;
         mName = name;
     }
@@ -47,10 +45,10 @@ public class UserDefineObject {
     public UserDefineObject(JSONObject jsonObject) {
         // importing from iOS will not have an id property
         try {
-            mId = UUID.fromString(jsonObject.getString(Json.ID));
+            mId = UserDefineId.fromString(jsonObject.getString(Json.ID));
         } catch (JSONException e) {
             Log.e(TAG, "No JSON value for " + Json.ID);
-            mId = UUID.randomUUID();
+            mId = UserDefineId.random();
         }
 
         // importing from iOS will not have a name property for some subclasses
@@ -64,7 +62,7 @@ public class UserDefineObject {
 
     private void initFromObj(UserDefineObject obj, boolean keepId) {
         if (obj != null) {
-            mId = keepId ? obj.getId() : UUID.randomUUID();
+            mId = keepId ? obj.getId() : UserDefineId.random();
             mName = obj.getName();
             mShouldDelete = obj.getShouldDelete();
             mIsSelected = obj.getIsSelected();
@@ -72,11 +70,11 @@ public class UserDefineObject {
     }
 
     //region Getters & Setters
-    public UUID getId() {
+    public UserDefineId getId() {
         return mId;
     }
 
-    public void setId(UUID id) {
+    public void setId(UserDefineId id) {
         mId = id;
     }
 
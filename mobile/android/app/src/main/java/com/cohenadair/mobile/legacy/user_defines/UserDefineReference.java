@@ -0,0 +1,98 @@
+package com.cohenadair.mobile.legacy.user_defines;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A UserDefineReference is a reference to another {@link UserDefineObject}, such as a
+ * {@link Catch}'s {@link Species}. Only the referenced object's id is stored until the object
+ * itself is needed; it's then resolved once, on first access, and kept.
+ *
+ * Code that only needs the id, such as {@link Catch#getContentValues()}, never builds the
+ * referenced object.
+ *
+ * References are safe to resolve from several threads, since objects from the export's identity
+ * map are shared by the threads of a parallel export. Two threads may both resolve the same
+ * reference, but they get the same object, and neither sees a resolved reference without it.
+ *
+ * @author Cohen Adair
+ */
+public class UserDefineReference<T extends UserDefineObject> {
+    /**
+     * Used to get the referenced object from its id, such as
+     * {@link com.cohenadair.mobile.legacy.Logbook#getSpecies(String)}.
+     */
+    public interface Resolver<T> {
+        T resolve(String id);
+    }
+
+    private final String mId;
+    private final Resolver<T> mResolver;
+
+    // mIsResolved is written after mObject, so a thread that sees it set also sees mObject
+    private T mObject;
+    private volatile boolean mIsResolved;
+
+    public UserDefineReference(@NonNull String id, @NonNull Resolver<T> resolver) {
+        mId = id;
+        mResolver = resolver;
+    }
+
+    private UserDefineReference(@NonNull T object) {
+        mId = object.getIdAsString();
+        mResolver = null;
+        mObject = object;
+        mIsResolved = true;
+    }
+
+    /**
+     * @return A UserDefineReference to an object that has already been read, or null if object
+     *         is null.
+     */
+    @Nullable
+    public static <T extends UserDefineObject> UserDefineReference<T> of(@Nullable T object) {
+        return (object == null) ? null : new UserDefineReference<>(object);
+    }
+
+    /**
+     * @return A copy of the given reference that resolves its object independently, or null if
+     *         reference is null. References created with {@link #of(UserDefineObject)} share
+     *         their object with the copy, since there's nothing to resolve it from.
+     */
+    @Nullable
+    public static <T extends UserDefineObject> UserDefineReference<T> copyOf(@Nullable UserDefineReference<T> reference) {
+        if (reference == null)
+            return null;
+
+        if (reference.mResolver == null)
+            return new UserDefineReference<>(reference.mObject);
+
+        return new UserDefineReference<>(reference.mId, reference.mResolver);
+    }
+
+    /**
+     * @return The id of the referenced object. The object itself is not resolved.
+     */
+    @NonNull
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @return The referenced object, resolving it if this is the first access. May be null if
+     *         the object no longer exists.
+     */
+    @Nullable
+    public T get() {
+        if (!mIsResolved) {
+            mObject = mResolver.resolve(mId);
+            mIsResolved = true;
+        }
+
+        return mObject;
+    }
+
+    public boolean isResolved() {
+        return mIsResolved;
+    }
+}
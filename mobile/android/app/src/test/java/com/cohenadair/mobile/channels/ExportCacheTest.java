@@ -0,0 +1,145 @@
+package com.cohenadair.mobile.channels;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.cohenadair.mobile.legacy.database.DatabaseFingerprint;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.PhotoTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExportCacheTest {
+    private static final String OPTIONS = "schemaVersion=2,stringDictionary=true";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDatabaseFile;
+    private SQLiteDatabase mDatabase;
+    private File mExportFile;
+    private ExportCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabaseFile = new File(mFolder.getRoot(), "Logbook.db");
+        mDatabase = openDatabase(0);
+        mDatabase.execSQL("CREATE TABLE " + CatchPhotoTable.NAME + " (" + PhotoTable.Columns.USER_DEFINE_ID + " TEXT, " + PhotoTable.Columns.NAME + " TEXT)");
+        mDatabase.execSQL("CREATE TABLE " + BaitPhotoTable.NAME + " (" + PhotoTable.Columns.USER_DEFINE_ID + " TEXT, " + PhotoTable.Columns.NAME + " TEXT)");
+
+        mExportFile = new File(mFolder.getRoot(), "legacy.json");
+        Files.write(mExportFile.toPath(), "{\"journal\":{}}".getBytes(StandardCharsets.UTF_8));
+        mCache = new ExportCache(mExportFile);
+    }
+
+    @After
+    public void tearDown() {
+        if (mDatabase.isOpen())
+            mDatabase.close();
+    }
+
+    @Test
+    public void testGetWithoutPut() {
+        assertNull(mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS));
+    }
+
+    @Test
+    public void testGetAfterPut() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+
+        Map<String, Object> result = mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS);
+        assertNotNull(result);
+        assertEquals(mExportFile.getPath(), result.get("file"));
+        assertEquals(mExportFile.length(), result.get("size"));
+        assertEquals(1234L, result.get("checksum"));
+    }
+
+    @Test
+    public void testGetAfterReopen() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+        reopenDatabase();
+
+        assertNotNull(mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS));
+    }
+
+    @Test
+    public void testGetAfterReopenInWalMode() throws Exception {
+        mDatabase.close();
+        mDatabase = openDatabase(SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        insertPhoto(CatchPhotoTable.NAME);
+
+        // the export's writes are still in the WAL when the key is put, and close checkpoints
+        // them into the database file
+        mCache.put(MigrationChannel.fingerprint(mDatabase), OPTIONS, 1234);
+        reopenDatabase();
+
+        assertNotNull(mCache.get(MigrationChannel.fingerprint(mDatabase), OPTIONS));
+    }
+
+    @Test
+    public void testMissAfterDatabaseChange() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+        insertPhoto(BaitPhotoTable.NAME);
+
+        assertNull(mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS));
+    }
+
+    @Test
+    public void testMissWithDifferentOptions() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+        assertNull(mCache.get(DatabaseFingerprint.of(mDatabase), "schemaVersion=1,stringDictionary=false"));
+    }
+
+    @Test
+    public void testMissAfterFileChange() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+        Files.write(mExportFile.toPath(), "{\"journal\":{\"name\":\"\"}}".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        mCache.put(DatabaseFingerprint.of(mDatabase), OPTIONS, 1234);
+        mCache.clear();
+
+        assertFalse(mExportFile.exists());
+        assertNull(mCache.get(DatabaseFingerprint.of(mDatabase), OPTIONS));
+    }
+
+    private SQLiteDatabase openDatabase(int flags) {
+        return SQLiteDatabase.openDatabase(mDatabaseFile.getPath(), null, SQLiteDatabase.CREATE_IF_NECESSARY | flags);
+    }
+
+    private void reopenDatabase() {
+        // reopened in the same journal mode, since changing it writes to the database
+        int flags = mDatabase.isWriteAheadLoggingEnabled() ? SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING : 0;
+        mDatabase.close();
+        mDatabase = openDatabase(flags);
+    }
+
+    private void insertPhoto(String table) {
+        ContentValues values = new ContentValues();
+        values.put(PhotoTable.Columns.USER_DEFINE_ID, "0");
+        values.put(PhotoTable.Columns.NAME, "photo.jpg");
+        mDatabase.insert(table, null, values);
+    }
+}
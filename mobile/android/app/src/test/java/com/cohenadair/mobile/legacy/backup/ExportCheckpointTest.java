@@ -0,0 +1,199 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExportCheckpointTest {
+    private static final String[] SPECIES = { "Bass", "Pike", "Bass", "Walleye", "Pike", "Perch" };
+    private static final int CHECKPOINT_INDEX = 3;
+    private static final String FINGERPRINT = "4096:1500000000000:0:12:3:1";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        StringDictionary dictionary = new StringDictionary();
+        dictionary.indexOf("fishSpecies", "Bass");
+        dictionary.indexOf("baitName", "Worm");
+
+        File file = mFolder.newFile();
+        new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, new Date(1000), "011", JsonExporter.SCHEMA_V2, dictionary)
+                .write(file, 42, FINGERPRINT);
+
+        ExportCheckpoint checkpoint = ExportCheckpoint.read(file);
+        assertNotNull(checkpoint);
+        assertEquals(ExportCheckpoint.SECTION_ENTRIES, checkpoint.getSection());
+        assertEquals(new Date(1000), checkpoint.getLastCatchDate());
+        assertEquals("011", checkpoint.getNesting());
+        assertEquals(42, checkpoint.getLength());
+        assertEquals(FINGERPRINT, checkpoint.getFingerprint());
+        assertNotNull(checkpoint.getStringDictionary());
+        assertEquals(1, checkpoint.getStringDictionary().indexOf("baitName", "Worm"));
+        assertEquals(2, checkpoint.getStringDictionary().indexOf("fishSpecies", "Pike"));
+        assertEquals("[\"fishSpecies\",\"baitName\"]", checkpoint.getStringDictionary().getKeys().toString());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testReadMissingFile() {
+        assertNull(ExportCheckpoint.read(new File(mFolder.getRoot(), "missing")));
+    }
+
+    @Test
+    public void testReadInvalidFile() throws Exception {
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), "{\"section\":".getBytes(StandardCharsets.UTF_8));
+        assertNull(ExportCheckpoint.read(file));
+    }
+
+    @Test
+    public void testResumeMatchesUninterruptedExport() throws Exception {
+        StringWriter expected = new StringWriter();
+        JsonStreamWriter out = new JsonStreamWriter(expected);
+        StringDictionary dictionary = new StringDictionary();
+        writeStart(out);
+        writeEntries(out, dictionary, 0, SPECIES.length);
+        writeEnd(out, dictionary);
+        byte[] expectedBytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+
+        File output = mFolder.newFile();
+        File checkpointFile = new File(mFolder.getRoot(), "checkpoint");
+
+        // interrupted export: a checkpoint partway through the entries, then output that's
+        // written after it, but never checkpointed
+        try (Writer writer = newWriter(output, new CRC32(), false)) {
+            out = new JsonStreamWriter(writer);
+            dictionary = new StringDictionary();
+            writeStart(out);
+            writeEntries(out, dictionary, 0, CHECKPOINT_INDEX);
+            out.flush();
+            new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, null, out.getNesting(), JsonExporter.SCHEMA_V2, dictionary)
+                    .write(checkpointFile, output.length(), FINGERPRINT);
+            writeEntries(out, dictionary, CHECKPOINT_INDEX, SPECIES.length - 1);
+        }
+
+        CRC32 checksum = new CRC32();
+        ExportCheckpoint checkpoint = ExportCheckpoint.resume(checkpointFile, output, FINGERPRINT, true, JsonExporter.SCHEMA_V2, checksum);
+        assertNotNull(checkpoint);
+        assertEquals(checkpoint.getLength(), output.length());
+
+        try (Writer writer = newWriter(output, checksum, true)) {
+            out = new JsonStreamWriter(writer, checkpoint.getNesting());
+            dictionary = checkpoint.getStringDictionary();
+            writeEntries(out, dictionary, CHECKPOINT_INDEX, SPECIES.length);
+            writeEnd(out, dictionary);
+        }
+
+        CRC32 expectedChecksum = new CRC32();
+        expectedChecksum.update(expectedBytes);
+
+        assertArrayEquals(expectedBytes, Files.readAllBytes(output.toPath()));
+        assertEquals(expectedChecksum.getValue(), checksum.getValue());
+    }
+
+    @Test
+    public void testResumeIncompatibleCheckpoint() throws Exception {
+        File output = mFolder.newFile();
+        Files.write(output.toPath(), "{\"journal\":{".getBytes(StandardCharsets.UTF_8));
+
+        File checkpointFile = mFolder.newFile();
+        new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, null, "01", JsonExporter.SCHEMA_V1, null)
+                .write(checkpointFile, output.length(), FINGERPRINT);
+
+        assertNull(ExportCheckpoint.resume(checkpointFile, output, FINGERPRINT, true, JsonExporter.SCHEMA_V1, new CRC32()));
+        assertFalse(checkpointFile.exists());
+
+        new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, null, "01", JsonExporter.SCHEMA_V1, null)
+                .write(checkpointFile, output.length(), FINGERPRINT);
+
+        assertNull(ExportCheckpoint.resume(checkpointFile, output, FINGERPRINT, false, JsonExporter.SCHEMA_V2, new CRC32()));
+        assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testResumeAfterDatabaseChange() throws Exception {
+        File output = mFolder.newFile();
+        Files.write(output.toPath(), "{\"journal\":{".getBytes(StandardCharsets.UTF_8));
+
+        File checkpointFile = mFolder.newFile();
+        new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, null, "01", JsonExporter.SCHEMA_V1, null)
+                .write(checkpointFile, output.length(), FINGERPRINT);
+
+        assertNull(ExportCheckpoint.resume(checkpointFile, output, "4096:1500000000001:0:13:3:1", false,
+                JsonExporter.SCHEMA_V1, new CRC32()));
+        assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testResumeOutputShorterThanCheckpoint() throws Exception {
+        File output = mFolder.newFile();
+        Files.write(output.toPath(), "{".getBytes(StandardCharsets.UTF_8));
+
+        File checkpointFile = mFolder.newFile();
+        new ExportCheckpoint(ExportCheckpoint.SECTION_ENTRIES, null, "01", JsonExporter.SCHEMA_V1, null)
+                .write(checkpointFile, 100, FINGERPRINT);
+
+        assertNull(ExportCheckpoint.resume(checkpointFile, output, FINGERPRINT, false, JsonExporter.SCHEMA_V1, new CRC32()));
+        assertFalse(checkpointFile.exists());
+        assertEquals(1, output.length());
+    }
+
+    @Test
+    public void testResumeWithoutCheckpoint() throws Exception {
+        File output = mFolder.newFile();
+        assertNull(ExportCheckpoint.resume(new File(mFolder.getRoot(), "missing"), output, FINGERPRINT, false,
+                JsonExporter.SCHEMA_V1, new CRC32()));
+    }
+
+    private Writer newWriter(File file, CRC32 checksum, boolean append) throws Exception {
+        return new BufferedWriter(new OutputStreamWriter(
+                new CheckedOutputStream(new FileOutputStream(file, append), checksum), StandardCharsets.UTF_8));
+    }
+
+    private void writeStart(JsonStreamWriter out) throws Exception {
+        out.beginObject();
+        out.name(Json.JOURNAL).beginObject();
+        out.name(Json.ENTRIES).beginArray();
+    }
+
+    private void writeEntries(JsonStreamWriter out, StringDictionary dictionary, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            JSONObject entry = new JSONObject();
+            entry.put(Json.FISH_SPECIES, dictionary.indexOf(Json.FISH_SPECIES, SPECIES[i]));
+            out.value(entry);
+        }
+    }
+
+    private void writeEnd(JsonStreamWriter out, StringDictionary dictionary) throws Exception {
+        out.endArray();
+        out.endObject();
+        out.name(Json.STRINGS).value(dictionary.getStrings());
+        out.name(Json.STRING_KEYS).value(dictionary.getKeys());
+        out.endObject();
+        out.flush();
+    }
+}
@@ -0,0 +1,468 @@
+package com.cohenadair.mobile.legacy.backup;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.cohenadair.mobile.legacy.Logbook;
+import com.cohenadair.mobile.legacy.database.LogbookHelper;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.AnglerTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitCategoryTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingMethodTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.FishingSpotTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.LocationTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.SpeciesTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.TripTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedAnglerTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedCatchTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedFishingMethodTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.UsedLocationTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.WaterClarityTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.WeatherTable;
+
+import com.cohenadair.mobile.legacy.database.DatabaseFingerprint;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class JsonExporterTest {
+    private static final String[] SPECIES = { "Bass", "Pike", "Walleye" };
+
+    // more than a page of each, so trips and entries are written in several pages
+    private static final int CATCHES = 250;
+    private static final int TRIPS = 120;
+
+    private static final long START_DATE = 1500000000000L;
+    private static final long MINUTE = 60 * 1000;
+
+    // the checkpoints of an export of the test logbook: the start of the entries, one after each
+    // of its three pages, and the start of the user defines
+    private static final int CHECKPOINT_ENTRIES = 1;
+    private static final int CHECKPOINT_SECOND_PAGE = 3;
+    private static final int CHECKPOINT_USER_DEFINES = 5;
+
+    // how much is written after the last checkpoint before an export is interrupted
+    private static final int BYTES_AFTER_CHECKPOINT = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private SQLiteDatabase mDatabase;
+    private int mIds;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+        mDatabase = new LogbookHelper(mContext).getWritableDatabase();
+        Logbook.init(mDatabase);
+        insertLogbook();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+        mContext.deleteDatabase(LogbookHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void testWriteJson() throws Exception {
+        JSONObject json = new JSONObject(export(false, JsonExporter.SCHEMA_V1));
+        JSONObject journal = json.getJSONObject(Json.JOURNAL);
+
+        assertEquals(TRIPS, journal.getJSONArray(Json.TRIPS).length());
+        assertEquals(CATCHES, journal.getJSONArray(Json.ENTRIES).length());
+
+        JSONArray userDefines = journal.getJSONArray(Json.USER_DEFINES);
+        assertEquals(7, userDefines.length());
+        assertEquals(SPECIES.length, userDefines.getJSONObject(4).getJSONArray(Json.SPECIES).length());
+    }
+
+    @Test
+    public void testWriteBatches() throws Exception {
+        JSONObject journal = new JSONObject(export(false, JsonExporter.SCHEMA_V2)).getJSONObject(Json.JOURNAL);
+        List<String> types = new ArrayList<>();
+        List<String> batches = new ArrayList<>();
+
+        JsonExporter.writeBatches(mContext, JsonExporter.SCHEMA_V2, (type, json) -> {
+            types.add(type);
+            batches.add(json);
+        });
+
+        assertEquals(Arrays.asList(
+                JsonExporter.BATCH_JOURNAL,
+                JsonExporter.BATCH_USER_DEFINES,
+                JsonExporter.BATCH_TRIPS,
+                JsonExporter.BATCH_TRIPS,
+                JsonExporter.BATCH_ENTRIES,
+                JsonExporter.BATCH_ENTRIES,
+                JsonExporter.BATCH_ENTRIES), types);
+
+        JSONObject batchJournal = new JSONObject(batches.get(0));
+        assertEquals(journal.getString(Json.NAME), batchJournal.getString(Json.NAME));
+        assertEquals(journal.getInt(Json.MEASUREMENT_SYSTEM), batchJournal.getInt(Json.MEASUREMENT_SYSTEM));
+        assertEquals(journal.getJSONArray(Json.USER_DEFINES).toString(), new JSONArray(batches.get(1)).toString());
+
+        JSONArray trips = new JSONArray();
+        JSONArray entries = new JSONArray();
+        for (int i = 2; i < batches.size(); i++) {
+            JSONArray page = new JSONArray(batches.get(i));
+            for (int j = 0; j < page.length(); j++)
+                (types.get(i).equals(JsonExporter.BATCH_TRIPS) ? trips : entries).put(page.get(j));
+        }
+
+        assertEquals(journal.getJSONArray(Json.TRIPS).toString(), trips.toString());
+        assertEquals(journal.getJSONArray(Json.ENTRIES).toString(), entries.toString());
+    }
+
+    @Test
+    public void testWriteProtoMessages() throws Exception {
+        JSONArray userDefines = new JSONObject(export(false, JsonExporter.SCHEMA_V2))
+                .getJSONObject(Json.JOURNAL).getJSONArray(Json.USER_DEFINES);
+        Map<String, byte[]> messages = JsonExporter.writeProtoMessages();
+
+        assertEquals(5, messages.size());
+        assertEquals(getIdsAndNames(userDefines, Json.ANGLERS), readIdsAndNames(messages.get(JsonExporter.PROTO_ANGLERS)));
+        assertEquals(getIdsAndNames(userDefines, Json.BAIT_CATEGORIES), readIdsAndNames(messages.get(JsonExporter.PROTO_BAIT_CATEGORIES)));
+        assertEquals(getIdsAndNames(userDefines, Json.FISHING_METHODS), readIdsAndNames(messages.get(JsonExporter.PROTO_METHODS)));
+        assertEquals(getIdsAndNames(userDefines, Json.SPECIES), readIdsAndNames(messages.get(JsonExporter.PROTO_SPECIES)));
+        assertEquals(getIdsAndNames(userDefines, Json.WATER_CLARITIES), readIdsAndNames(messages.get(JsonExporter.PROTO_WATER_CLARITIES)));
+        assertEquals(SPECIES.length, readIdsAndNames(messages.get(JsonExporter.PROTO_SPECIES)).size());
+    }
+
+    @Test
+    public void testWriteJsonWithoutProtoGroups() throws Exception {
+        StringWriter writer = new StringWriter();
+        JsonExporter.writeJson(mContext, writer, false, JsonExporter.SCHEMA_V2, true, null, null);
+
+        JSONObject journal = new JSONObject(writer.toString()).getJSONObject(Json.JOURNAL);
+        JSONArray userDefines = journal.getJSONArray(Json.USER_DEFINES);
+
+        assertEquals(2, userDefines.length());
+        assertEquals(Json.NAME_BAITS, userDefines.getJSONObject(0).getString(Json.NAME));
+        assertEquals(Json.NAME_LOCATIONS, userDefines.getJSONObject(1).getString(Json.NAME));
+        assertEquals(CATCHES, journal.getJSONArray(Json.ENTRIES).length());
+    }
+
+    @Test
+    public void testResumeFromStartOfEntries() throws Exception {
+        ExportCheckpoint checkpoint = assertResumeMatchesUninterruptedExport(CHECKPOINT_ENTRIES, true, JsonExporter.SCHEMA_V2);
+        assertEquals(ExportCheckpoint.SECTION_ENTRIES, checkpoint.getSection());
+        assertNull(checkpoint.getLastCatchDate());
+    }
+
+    @Test
+    public void testResumeFromMiddleOfEntries() throws Exception {
+        ExportCheckpoint checkpoint = assertResumeMatchesUninterruptedExport(CHECKPOINT_SECOND_PAGE, true, JsonExporter.SCHEMA_V2);
+        assertEquals(ExportCheckpoint.SECTION_ENTRIES, checkpoint.getSection());
+        assertNotNull(checkpoint.getLastCatchDate());
+    }
+
+    @Test
+    public void testResumeFromUserDefines() throws Exception {
+        ExportCheckpoint checkpoint = assertResumeMatchesUninterruptedExport(CHECKPOINT_USER_DEFINES, true, JsonExporter.SCHEMA_V2);
+        assertEquals(ExportCheckpoint.SECTION_USER_DEFINES, checkpoint.getSection());
+    }
+
+    @Test
+    public void testResumeWithoutStringDictionary() throws Exception {
+        assertResumeMatchesUninterruptedExport(CHECKPOINT_SECOND_PAGE, false, JsonExporter.SCHEMA_V1);
+    }
+
+    /**
+     * Interrupts an export once the given number of checkpoints are written, and a little more
+     * output after them, as if the app was killed. The export is then resumed, the way
+     * MigrationChannel resumes it.
+     *
+     * @return The checkpoint the export was resumed from.
+     */
+    private ExportCheckpoint assertResumeMatchesUninterruptedExport(int interruptAfter, boolean useStringDictionary,
+                                                                    int schemaVersion) throws Exception {
+        byte[] expected = export(useStringDictionary, schemaVersion).getBytes(StandardCharsets.UTF_8);
+        String fingerprint = DatabaseFingerprint.of(mDatabase);
+
+        File output = mFolder.newFile();
+        File checkpointFile = new File(mFolder.getRoot(), "checkpoint");
+        InterruptingOutputStream stream = new InterruptingOutputStream(new FileOutputStream(output));
+        int[] checkpoints = { 0 };
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            JsonExporter.writeJson(mContext, writer, useStringDictionary, schemaVersion, false, null, checkpoint -> {
+                checkpoint.write(checkpointFile, output.length(), fingerprint);
+                if (++checkpoints[0] == interruptAfter)
+                    stream.interruptAfter(BYTES_AFTER_CHECKPOINT);
+            });
+            fail("Expected the export to be interrupted");
+        } catch (IOException e) {
+            // expected
+        }
+
+        long interruptedLength = output.length();
+        CRC32 checksum = new CRC32();
+        ExportCheckpoint checkpoint = ExportCheckpoint.resume(checkpointFile, output, fingerprint,
+                useStringDictionary, schemaVersion, checksum);
+
+        assertNotNull(checkpoint);
+        assertTrue(interruptedLength > checkpoint.getLength());
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new CheckedOutputStream(new FileOutputStream(output, true), checksum), StandardCharsets.UTF_8))) {
+            JsonExporter.writeJson(mContext, writer, useStringDictionary, schemaVersion, false, checkpoint,
+                    next -> next.write(checkpointFile, output.length(), fingerprint));
+        }
+
+        CRC32 expectedChecksum = new CRC32();
+        expectedChecksum.update(expected);
+
+        assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+        assertEquals(expectedChecksum.getValue(), checksum.getValue());
+
+        return checkpoint;
+    }
+
+    private String export(boolean useStringDictionary, int schemaVersion) throws Exception {
+        StringWriter writer = new StringWriter();
+        JsonExporter.writeJson(mContext, writer, useStringDictionary, schemaVersion);
+        return writer.toString();
+    }
+
+    private void insertLogbook() {
+        mDatabase.beginTransaction();
+
+        try {
+            String[] species = new String[SPECIES.length];
+            for (int i = 0; i < SPECIES.length; i++)
+                species[i] = insertUserDefine(SpeciesTable.NAME, SPECIES[i], null);
+
+            String category = insertUserDefine(BaitCategoryTable.NAME, "Live", null);
+            ContentValues bait = new ContentValues();
+            bait.put(BaitTable.Columns.CATEGORY_ID, category);
+            bait.put(BaitTable.Columns.TYPE, 1);
+            String worm = insertUserDefine(BaitTable.NAME, "Worm", bait);
+
+            String location = insertUserDefine(LocationTable.NAME, "Lake", null);
+            ContentValues spot = new ContentValues();
+            spot.put(FishingSpotTable.Columns.LOCATION_ID, location);
+            spot.put(FishingSpotTable.Columns.LATITUDE, 50.94);
+            spot.put(FishingSpotTable.Columns.LONGITUDE, -114.01);
+            String dock = insertUserDefine(FishingSpotTable.NAME, "Dock", spot);
+
+            String clear = insertUserDefine(WaterClarityTable.NAME, "Clear", null);
+            String trolling = insertUserDefine(FishingMethodTable.NAME, "Trolling", null);
+            String angler = insertUserDefine(AnglerTable.NAME, "Cohen", null);
+
+            String[] catches = new String[CATCHES];
+            for (int i = 0; i < CATCHES; i++) {
+                ContentValues values = new ContentValues();
+                values.put(CatchTable.Columns.DATE, START_DATE + i * MINUTE);
+                values.put(CatchTable.Columns.SPECIES_ID, species[i % species.length]);
+                values.put(CatchTable.Columns.BAIT_ID, (i % 2 == 0) ? worm : null);
+                values.put(CatchTable.Columns.FISHING_SPOT_ID, (i % 3 == 0) ? dock : null);
+                values.put(CatchTable.Columns.CLARITY_ID, (i % 4 == 0) ? clear : null);
+                values.put(CatchTable.Columns.QUANTITY, 1 + i % 5);
+                values.put(CatchTable.Columns.LENGTH, i / 10.0);
+                values.put(CatchTable.Columns.NOTES, "Catch " + i);
+                catches[i] = insertUserDefine(CatchTable.NAME, "", values);
+
+                if (i % 5 == 0)
+                    insert(UsedFishingMethodTable.NAME, UsedFishingMethodTable.Columns.CATCH_ID, catches[i],
+                            UsedFishingMethodTable.Columns.FISHING_METHOD_ID, trolling);
+
+                if (i % 7 == 0)
+                    insert(CatchPhotoTable.NAME, CatchPhotoTable.Columns.USER_DEFINE_ID, catches[i],
+                            CatchPhotoTable.Columns.NAME, "IMG_" + i + ".jpg");
+
+                if (i % 6 == 0) {
+                    ContentValues weather = new ContentValues();
+                    weather.put(WeatherTable.Columns.CATCH_ID, catches[i]);
+                    weather.put(WeatherTable.Columns.TEMPERATURE, 20 + i % 10);
+                    weather.put(WeatherTable.Columns.WIND_SPEED, i % 30);
+                    weather.put(WeatherTable.Columns.SKY_CONDITIONS, "Sunny");
+                    mDatabase.insertOrThrow(WeatherTable.NAME, null, weather);
+                }
+            }
+
+            for (int i = 0; i < TRIPS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(TripTable.Columns.START_DATE, START_DATE + i * 2 * MINUTE);
+                values.put(TripTable.Columns.END_DATE, START_DATE + (i * 2 + 1) * MINUTE);
+                values.put(TripTable.Columns.NOTES, "Trip " + i);
+                String trip = insertUserDefine(TripTable.NAME, "Trip " + i, values);
+
+                insert(UsedCatchTable.NAME, UsedCatchTable.Columns.TRIP_ID, trip,
+                        UsedCatchTable.Columns.CATCH_ID, catches[i * 2]);
+
+                if (i % 2 == 0)
+                    insert(UsedAnglerTable.NAME, UsedAnglerTable.Columns.TRIP_ID, trip,
+                            UsedAnglerTable.Columns.ANGLER_ID, angler);
+
+                if (i % 3 == 0)
+                    insert(UsedLocationTable.NAME, UsedLocationTable.Columns.TRIP_ID, trip,
+                            UsedLocationTable.Columns.LOCATION_ID, location);
+            }
+
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * @return The "id name" of each object in the given Json.USER_DEFINES entry.
+     */
+    private static List<String> getIdsAndNames(JSONArray userDefines, String arrName) throws Exception {
+        List<String> result = new ArrayList<>();
+
+        for (int i = 0; i < userDefines.length(); i++) {
+            JSONArray objects = userDefines.getJSONObject(i).optJSONArray(arrName);
+            for (int j = 0; objects != null && j < objects.length(); j++)
+                result.add(objects.getJSONObject(j).getString(Json.ID) + " " + objects.getJSONObject(j).getString(Json.NAME));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The "id name" of each length-delimited message written by
+     *         {@link JsonExporter#writeProtoMessages()}.
+     */
+    private static List<String> readIdsAndNames(byte[] bytes) {
+        List<String> result = new ArrayList<>();
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+        while (in.available() > 0) {
+            ByteArrayInputStream message = new ByteArrayInputStream(readDelimited(in));
+            String id = null;
+            String name = null;
+
+            while (message.available() > 0) {
+                int field = readVarint(message) >>> 3;
+                byte[] value = readDelimited(message);
+
+                if (field == 1) {
+                    // the Id message's only field is its UUID string
+                    ByteArrayInputStream idMessage = new ByteArrayInputStream(value);
+                    readVarint(idMessage);
+                    id = new String(readDelimited(idMessage), StandardCharsets.UTF_8);
+                } else if (field == 2) {
+                    name = new String(value, StandardCharsets.UTF_8);
+                }
+            }
+
+            result.add(id + " " + name);
+        }
+
+        return result;
+    }
+
+    private static byte[] readDelimited(ByteArrayInputStream in) {
+        byte[] result = new byte[readVarint(in)];
+        assertEquals(result.length, in.read(result, 0, result.length));
+        return result;
+    }
+
+    private static int readVarint(ByteArrayInputStream in) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+    }
+
+    /**
+     * @return The id of the inserted object.
+     */
+    private String insertUserDefine(String table, String name, ContentValues values) {
+        ContentValues row = (values == null) ? new ContentValues() : values;
+        String id = UUID.nameUUIDFromBytes((table + mIds++).getBytes(StandardCharsets.UTF_8)).toString();
+        row.put(SpeciesTable.Columns.ID, id);
+        row.put(SpeciesTable.Columns.NAME, name);
+        row.put(SpeciesTable.Columns.SELECTED, 0);
+        mDatabase.insertOrThrow(table, null, row);
+        return id;
+    }
+
+    private void insert(String table, String column1, String value1, String column2, String value2) {
+        ContentValues row = new ContentValues();
+        row.put(column1, value1);
+        row.put(column2, value2);
+        mDatabase.insertOrThrow(table, null, row);
+    }
+
+    /**
+     * Fails every write once {@link #interruptAfter(int)} bytes have been written after it's
+     * called.
+     */
+    private static class InterruptingOutputStream extends FilterOutputStream {
+        private int mRemaining = -1;
+
+        InterruptingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void interruptAfter(int bytes) {
+            mRemaining = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (mRemaining < 0) {
+                out.write(b, off, len);
+                return;
+            }
+
+            int written = Math.min(len, mRemaining);
+            out.write(b, off, written);
+            mRemaining -= written;
+
+            if (written < len)
+                throw new IOException("Interrupted");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.cohenadair.mobile.legacy.database.LogbookSchema.BaitPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.CatchPhotoTable;
+import com.cohenadair.mobile.legacy.database.LogbookSchema.PhotoTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExportIndexesTest {
+    private static final int ROWS = 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        File file = new File(mFolder.getRoot(), "Logbook.db");
+        mDatabase = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.CREATE_IF_NECESSARY);
+        mDatabase.execSQL("CREATE TABLE " + CatchPhotoTable.NAME + " (" + PhotoTable.Columns.USER_DEFINE_ID + " TEXT, " + PhotoTable.Columns.NAME + " TEXT)");
+        mDatabase.execSQL("CREATE TABLE " + BaitPhotoTable.NAME + " (" + PhotoTable.Columns.USER_DEFINE_ID + " TEXT, " + PhotoTable.Columns.NAME + " TEXT)");
+
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PhotoTable.Columns.USER_DEFINE_ID, Integer.toString(i));
+                values.put(PhotoTable.Columns.NAME, "photo" + i + ".jpg");
+                mDatabase.insert(CatchPhotoTable.NAME, null, values);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void testCreateOnlyIndexesLargeTables() {
+        ExportIndexes indexes = ExportIndexes.create(mDatabase);
+
+        try {
+            assertEquals(1, countIndexes());
+            assertEquals(1, DatabaseUtils.longForQuery(mDatabase, "SELECT count(*) FROM sqlite_stat1", null));
+        } finally {
+            indexes.drop();
+        }
+    }
+
+    @Test
+    public void testDropRemovesIndexesAndStatistics() {
+        ExportIndexes.create(mDatabase).drop();
+
+        assertEquals(0, countIndexes());
+        assertEquals(0, countTables("sqlite_stat1"));
+    }
+
+    @Test
+    public void testDropKeepsExistingStatistics() {
+        mDatabase.execSQL("ANALYZE");
+        long statistics = DatabaseUtils.longForQuery(mDatabase, "SELECT count(*) FROM sqlite_stat1", null);
+
+        ExportIndexes.create(mDatabase).drop();
+
+        assertEquals(1, countTables("sqlite_stat1"));
+        assertEquals(statistics, DatabaseUtils.longForQuery(mDatabase, "SELECT count(*) FROM sqlite_stat1", null));
+    }
+
+    @Test
+    public void testCreateReusesLeftoverIndexes() {
+        // an export that's killed doesn't drop its indexes
+        ExportIndexes.create(mDatabase);
+        String fingerprint = DatabaseFingerprint.of(mDatabase);
+
+        ExportIndexes indexes = ExportIndexes.create(mDatabase);
+        assertEquals(fingerprint, DatabaseFingerprint.of(mDatabase));
+
+        indexes.drop();
+        assertEquals(0, countIndexes());
+        assertEquals(0, countTables("sqlite_stat1"));
+    }
+
+    private long countIndexes() {
+        return DatabaseUtils.longForQuery(mDatabase,
+                "SELECT count(*) FROM sqlite_master WHERE type = 'index' AND name LIKE 'export_idx_%'", null);
+    }
+
+    private long countTables(String name) {
+        return DatabaseUtils.longForQuery(mDatabase,
+                "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?", new String[] { name });
+    }
+}
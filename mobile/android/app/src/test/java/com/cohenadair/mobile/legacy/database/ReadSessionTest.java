@@ -0,0 +1,107 @@
+package com.cohenadair.mobile.legacy.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReadSessionTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDatabaseFile;
+    private SQLiteDatabase mDatabase;
+
+    @After
+    public void tearDown() {
+        if (mDatabase != null && mDatabase.isOpen())
+            mDatabase.close();
+    }
+
+    @Test
+    public void testOtherConnectionsCanRead() {
+        openDatabase(0);
+        assertOtherConnectionsCanRead();
+    }
+
+    @Test
+    public void testOtherConnectionsCanReadInWalMode() {
+        openDatabase(SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        assertOtherConnectionsCanRead();
+    }
+
+    @Test
+    public void testWritesFailDuringSession() {
+        openDatabase(0);
+        ReadSession session = ReadSession.begin(mDatabase);
+
+        try {
+            mDatabase.execSQL("INSERT INTO Test VALUES (2)");
+            fail("Expected a write to fail during a session");
+        } catch (SQLiteException e) {
+            // expected
+        } finally {
+            session.end();
+        }
+
+        mDatabase.execSQL("INSERT INTO Test VALUES (2)");
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDatabase, "Test"));
+    }
+
+    @Test
+    public void testEndRestoresSettings() {
+        openDatabase(0);
+        long cacheSize = DatabaseUtils.longForQuery(mDatabase, "PRAGMA cache_size", null);
+        long tempStore = DatabaseUtils.longForQuery(mDatabase, "PRAGMA temp_store", null);
+
+        ReadSession.begin(mDatabase).end();
+
+        assertEquals(cacheSize, DatabaseUtils.longForQuery(mDatabase, "PRAGMA cache_size", null));
+        assertEquals(tempStore, DatabaseUtils.longForQuery(mDatabase, "PRAGMA temp_store", null));
+        assertEquals("normal", DatabaseUtils.stringForQuery(mDatabase, "PRAGMA locking_mode", null));
+        assertEquals(0, DatabaseUtils.longForQuery(mDatabase, "PRAGMA query_only", null));
+    }
+
+    private void openDatabase(int flags) {
+        mDatabaseFile = new File(mFolder.getRoot(), "Logbook.db");
+        mDatabase = SQLiteDatabase.openDatabase(mDatabaseFile.getPath(), null, SQLiteDatabase.CREATE_IF_NECESSARY | flags);
+        mDatabase.execSQL("CREATE TABLE Test (value INTEGER)");
+        mDatabase.execSQL("INSERT INTO Test VALUES (1)");
+    }
+
+    /**
+     * Reads from a read-only connection while a session is open, as the workers of a parallel
+     * export do.
+     */
+    private void assertOtherConnectionsCanRead() {
+        ReadSession session = ReadSession.begin(mDatabase);
+
+        try {
+            SQLiteDatabase reader = SQLiteDatabase.openDatabase(mDatabaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+            ReadSession readerSession = ReadSession.begin(reader);
+
+            try {
+                assertEquals(1, DatabaseUtils.queryNumEntries(reader, "Test"));
+            } finally {
+                readerSession.end();
+                reader.close();
+            }
+
+            assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, "Test"));
+        } finally {
+            session.end();
+        }
+    }
+}
@@ -1,17 +1,78 @@
 import 'dart:convert';
+import 'dart:io';
+import 'dart:typed_data';
 
+import 'package:archive/archive.dart' show getCrc32;
+import 'package:flutter/foundation.dart' show compute;
 import 'package:flutter/services.dart';
 import 'package:quiver/strings.dart';
 
 import '../wrappers/services_wrapper.dart';
 
 const _channelName = "com.cohenadair.anglerslog/migration";
+const _streamChannelName = "com.cohenadair.anglerslog/migration/stream";
+const _ackBatchName = "ackLegacyBatch";
+
+/// Asks the platform to write repeated strings once, to [_keyStrings], and
+/// reference them by index. See [expandLegacyStrings].
+const _argStringDictionary = "stringDictionary";
+const _keyStrings = "strings";
+const _keyStringKeys = "stringKeys";
+
+/// Asks the platform for the compact version of the legacy JSON, which leaves
+/// out data only used by the iOS app, such as the empty arrays in each user
+/// define group. Catches in the compact version reference their fishing spot
+/// by ID rather than by name. Platforms that don't support it send the
+/// original version.
+const _argSchemaVersion = "schemaVersion";
+const _schemaVersion = 2;
+
+/// Asks the platform to write the legacy JSON to a file and return its path,
+/// size and checksum, rather than the JSON itself. See [readLegacyJsonFile].
+const _argFile = "file";
+const _keyFile = "file";
+const _keySize = "size";
+const _keyChecksum = "checksum";
+
+/// Asks the platform to return the legacy JSON as gzipped UTF-8 bytes, along
+/// with its uncompressed size, rather than as a string. See
+/// [decodeLegacyJsonBytes].
+const _argBytes = "bytes";
+const _argGzip = "gzip";
+const _keyBytes = "bytes";
+const _keyGzip = "gzip";
+
+/// Asks the platform to leave the user defines listed in [LegacyMessageType]
+/// out of the legacy JSON, and send them as their protobuf messages instead.
+/// Platforms that don't support it leave them in the JSON.
+const _argProtobuf = "protobuf";
+const _keyProtobuf = "protobuf";
 
 enum LegacyJsonErrorCode {
   invalidJson,
   platformException,
   missingPluginException,
   missingData,
+  invalidFile,
+}
+
+/// User defines that are only an ID and a name, and are sent as their
+/// protobuf messages, rather than JSON. See [LegacyJsonResult.messages].
+enum LegacyMessageType {
+  /// `Angler` messages.
+  anglers,
+
+  /// `BaitCategory` messages.
+  baitCategories,
+
+  /// `Method` messages.
+  methods,
+
+  /// `Species` messages.
+  species,
+
+  /// `WaterClarity` messages.
+  waterClarities,
 }
 
 class LegacyJsonResult {
@@ -24,6 +85,10 @@ class LegacyJsonResult {
   /// The legacy JSON. Non-null if [error] is empty.
   final Map<String, dynamic>? json;
 
+  /// Length-delimited protobuf messages of the user defines left out of
+  /// [json]. Empty if the platform didn't send any. See `parseDelimited`.
+  final Map<LegacyMessageType, Uint8List> messages;
+
   final LegacyJsonErrorCode? errorCode;
   final String? errorDescription;
 
@@ -31,6 +96,7 @@ class LegacyJsonResult {
     this.databasePath,
     this.imagesPath,
     this.json,
+    this.messages = const {},
     this.errorCode,
     this.errorDescription,
   });
@@ -45,33 +111,115 @@ class LegacyJsonResult {
       "databasePath=$databasePath, "
       "imagesPath:$imagesPath, "
       "json=$json, "
+      "messages=${messages.keys}, "
       "errorCode=$errorCode, "
       "errorDescription=$errorDescription"
       "}";
 }
 
-Future<LegacyJsonResult?> legacyJson(ServicesWrapper servicesWrapper) async {
+enum LegacyJsonBatchType {
+  /// The legacy journal, without its user defines, entries or trips. Always
+  /// the first batch.
+  journal,
+
+  /// A list of every legacy user define group.
+  userDefines,
+
+  /// A page of legacy trips. Trips are sent before catches, so each trip's
+  /// per-entity catch counts can be filled in as its catches arrive.
+  trips,
+
+  /// A page of legacy catches.
+  entries,
+}
+
+class LegacyJsonBatch {
+  final LegacyJsonBatchType type;
+
+  /// The decoded JSON of this batch; a map for
+  /// [LegacyJsonBatchType.journal], and a list otherwise.
+  final dynamic json;
+
+  /// The path to the old database file. Only set for
+  /// [LegacyJsonBatchType.journal].
+  final String? databasePath;
+
+  /// The path to the old images directory. Only set for
+  /// [LegacyJsonBatchType.journal].
+  final String? imagesPath;
+
+  LegacyJsonBatch({
+    required this.type,
+    required this.json,
+    this.databasePath,
+    this.imagesPath,
+  });
+}
+
+/// Returns the legacy JSON from the platform. By default, the platform writes
+/// it to a file. If [inMemory] is true, it's returned through the channel as
+/// gzipped bytes instead.
+Future<LegacyJsonResult?> legacyJson(
+  ServicesWrapper servicesWrapper, {
+  bool inMemory = false,
+}) async {
   var name = "legacyJson";
 
   try {
-    var result =
-        await servicesWrapper.methodChannel(_channelName).invokeMethod(name);
+    var result = await servicesWrapper
+        .methodChannel(_channelName)
+        .invokeMethod(name, {
+      _argStringDictionary: true,
+      _argSchemaVersion: _schemaVersion,
+      _argProtobuf: true,
+      if (inMemory) ...{
+        _argBytes: true,
+        _argGzip: true,
+      } else
+        _argFile: true,
+    });
 
     if (result == null) {
       return null;
     } else {
       Map<String, dynamic>? json;
       LegacyJsonErrorCode? errorCode;
+      String? errorDescription;
 
       if (isEmpty(result["db"]) ||
           isEmpty(result["img"]) ||
-          result["json"] == null) {
+          (result["json"] == null &&
+              result[_keyFile] == null &&
+              result[_keyBytes] == null)) {
         errorCode = LegacyJsonErrorCode.missingData;
       } else {
         try {
-          json = jsonDecode(result["json"]);
-        } on FormatException {
+          if (result[_keyBytes] != null) {
+            json = await compute(decodeLegacyJsonBytes, {
+              _keyBytes: result[_keyBytes],
+              _keyGzip: result[_keyGzip],
+              _keySize: result[_keySize],
+            });
+          } else if (result[_keyFile] == null) {
+            json = expandLegacyStrings(jsonDecode(result["json"]));
+          } else {
+            // the file can be several megabytes, so it's read and decoded off the
+            // UI isolate
+            json = await compute(readLegacyJsonFile, {
+              _keyFile: result[_keyFile],
+              _keySize: result[_keySize],
+              _keyChecksum: result[_keyChecksum],
+            });
+          }
+        } on FormatException catch (e) {
           errorCode = LegacyJsonErrorCode.invalidJson;
+          errorDescription = result["json"] ?? result[_keyFile] ?? e.message;
+        } on RangeError catch (e) {
+          errorCode = LegacyJsonErrorCode.invalidJson;
+          errorDescription = result["json"] ?? result[_keyFile] ?? e.toString();
+        } on FileSystemException catch (e) {
+          errorCode = LegacyJsonErrorCode.invalidFile;
+          errorDescription = e.toString();
         }
       }
 
@@ -79,8 +227,9 @@ Future<LegacyJsonResult?> legacyJson(ServicesWrapper servicesWrapper) async {
         databasePath: result["db"],
         imagesPath: result["img"],
         json: json,
+        messages: _legacyMessages(result[_keyProtobuf]),
         errorCode: errorCode,
-        errorDescription: result["json"],
+        errorDescription: errorDescription,
       );
     }
   } on PlatformException catch (e) {
@@ -95,3 +244,214 @@ Future<LegacyJsonResult?> legacyJson(ServicesWrapper servicesWrapper) async {
     );
   }
 }
+
+Map<LegacyMessageType, Uint8List> _legacyMessages(dynamic messages) {
+  if (messages is! Map) {
+    return const {};
+  }
+
+  var types = LegacyMessageType.values.asNameMap();
+  var result = <LegacyMessageType, Uint8List>{};
+  for (var entry in messages.entries) {
+    var type = types[entry.key];
+    if (type != null && entry.value is Uint8List) {
+      result[type] = entry.value;
+    }
+  }
+  return result;
+}
+
+/// Streams the legacy JSON from the platform in batches, rather than all at
+/// once, so each batch can be imported while the next one is read. See
+/// [LegacyJsonBatchType] for the order batches are sent in.
+///
+/// [onBatch] is invoked for one batch at a time, and the platform is told when
+/// it completes, so it never reads more than a few batches ahead. If
+/// [onBatch] throws, the stream is cancelled and the error is rethrown.
+///
+/// Returns null if there's no legacy data to migrate. Otherwise, returns a
+/// result without [LegacyJsonResult.json], since it was passed to [onBatch].
+Future<LegacyJsonResult?> streamLegacyJson(
+  ServicesWrapper servicesWrapper,
+  Future<void> Function(LegacyJsonBatch) onBatch,
+) async {
+  var methodChannel = servicesWrapper.methodChannel(_channelName);
+  var events = servicesWrapper
+      .eventChannel(_streamChannelName)
+      .receiveBroadcastStream({_argSchemaVersion: _schemaVersion});
+
+  String? databasePath;
+  String? imagesPath;
+
+  try {
+    // Breaking out of, or throwing from, this loop cancels the stream, which
+    // stops the export on the platform side.
+    await for (var event in events) {
+      var type = LegacyJsonBatchType.values.asNameMap()[event["type"]];
+      if (type == null || event["json"] == null) {
+        return LegacyJsonResult(
+          errorCode: LegacyJsonErrorCode.missingData,
+          errorDescription: "Unknown legacy batch: ${event["type"]}",
+        );
+      }
+
+      var isJournal = type == LegacyJsonBatchType.journal;
+      if (isJournal) {
+        databasePath = event["db"];
+        imagesPath = event["img"];
+
+        if (isEmpty(databasePath) || isEmpty(imagesPath)) {
+          return LegacyJsonResult(
+            errorCode: LegacyJsonErrorCode.missingData,
+            errorDescription: event["json"],
+          );
+        }
+      }
+
+      dynamic json;
+      try {
+        json = jsonDecode(event["json"]);
+      } on FormatException {
+        return LegacyJsonResult(
+          errorCode: LegacyJsonErrorCode.invalidJson,
+          errorDescription: event["json"],
+        );
+      }
+
+      await onBatch(LegacyJsonBatch(
+        type: type,
+        json: json,
+        databasePath: isJournal ? databasePath : null,
+        imagesPath: isJournal ? imagesPath : null,
+      ));
+      await methodChannel.invokeMethod(_ackBatchName);
+    }
+  } on PlatformException catch (e) {
+    return LegacyJsonResult(
+      errorCode: LegacyJsonErrorCode.platformException,
+      errorDescription: e.message,
+    );
+  } on MissingPluginException catch (e) {
+    return LegacyJsonResult(
+      errorCode: LegacyJsonErrorCode.missingPluginException,
+      errorDescription: e.message,
+    );
+  }
+
+  if (databasePath == null) {
+    return null;
+  }
+
+  return LegacyJsonResult(
+    databasePath: databasePath,
+    imagesPath: imagesPath,
+  );
+}
+
+/// Replaces string dictionary indexes in the given legacy JSON with the strings
+/// they reference, so the result has the same shape as an export that doesn't
+/// use a dictionary. Only values of the keys listed in [_keyStringKeys] that
+/// are an index, or a list of indexes, are replaced.
+///
+/// The dictionary entries are removed from the result. JSON without a
+/// dictionary is returned as is.
+Map<String, dynamic> expandLegacyStrings(Map<String, dynamic> json) {
+  var strings = json.remove(_keyStrings);
+  var keys = json.remove(_keyStringKeys);
+
+  if (strings is! List || keys is! List) {
+    return json;
+  }
+
+  var stringKeys = Set<String>.from(keys);
+
+  dynamic expand(String? key, dynamic value) {
+    if (value is int && stringKeys.contains(key)) {
+      return strings[value];
+    }
+
+    if (value is List) {
+      if (stringKeys.contains(key) && value.every((e) => e is int)) {
+        return value.map((e) => strings[e]).toList();
+      }
+
+      for (var i = 0; i < value.length; i++) {
+        value[i] = expand(null, value[i]);
+      }
+    } else if (value is Map<String, dynamic>) {
+      value.updateAll(expand);
+    }
+
+    return value;
+  }
+
+  json.updateAll(expand);
+  return json;
+}
+
+/// Reads, verifies and decodes a legacy JSON file written by the platform side
+/// of the channel. The file isn't deleted, since the platform reuses it until
+/// the legacy data changes, and deletes it once the legacy data is gone.
+///
+/// [args] includes the file's path, its size in bytes and its CRC32 checksum.
+/// A [FileSystemException] is thrown if the file can't be read, or if its size
+/// or checksum doesn't match.
+Map<String, dynamic> readLegacyJsonFile(Map<String, dynamic> args) {
+  var file = File(args[_keyFile]);
+  var bytes = file.readAsBytesSync();
+
+  if (bytes.length != args[_keySize]) {
+    throw FileSystemException(
+        "Expected ${args[_keySize]} bytes, read ${bytes.length}", file.path);
+  }
+
+  if (getCrc32(bytes) != args[_keyChecksum]) {
+    throw FileSystemException("Checksum mismatch", file.path);
+  }
+
+  return expandLegacyStrings(jsonDecode(utf8.decode(bytes)));
+}
+
+/// Decodes legacy JSON bytes returned by the platform side of the channel.
+///
+/// [args] includes the UTF-8 bytes, whether they're gzipped, and the size of
+/// the uncompressed bytes, which is used to inflate them into a single buffer.
+/// A [RangeError] is thrown if the uncompressed size doesn't match.
+Map<String, dynamic> decodeLegacyJsonBytes(Map<String, dynamic> args) {
+  Uint8List bytes = args[_keyBytes];
+  int size = args[_keySize];
+
+  if (args[_keyGzip] == true) {
+    var sink = _FixedSizeSink(size);
+    gzip.decoder.startChunkedConversion(sink)
+      ..add(bytes)
+      ..close();
+    bytes = sink.bytes;
+  }
+
+  if (bytes.length != size) {
+    throw RangeError("Expected $size bytes, read ${bytes.length}");
+  }
+
+  return expandLegacyStrings(jsonDecode(utf8.decode(bytes)));
+}
+
+/// Collects inflated chunks into a buffer of a known size, rather than a list
+/// of chunks that have to be copied again once they're all added.
+class _FixedSizeSink extends ByteConversionSink {
+  final Uint8List _buffer;
+  var _length = 0;
+
+  _FixedSizeSink(int size) : _buffer = Uint8List(size);
+
+  Uint8List get bytes => Uint8List.sublistView(_buffer, 0, _length);
+
+  @override
+  void add(List<int> chunk) {
+    _buffer.setRange(_length, _length + chunk.length, chunk);
+    _length += chunk.length;
+  }
+
+  @override
+  void close() {}
+}
@@ -12,6 +12,7 @@ import 'package:mobile/trip_manager.dart';
 import 'package:mobile/utils/date_time_utils.dart';
 import 'package:mobile/utils/io_utils.dart';
 import 'package:path/path.dart';
+import 'package:protobuf/protobuf.dart';
 import 'package:quiver/strings.dart';
 
 import '../angler_manager.dart';
@@ -32,6 +33,7 @@ import '../utils/protobuf_utils.dart';
 import '../water_clarity_manager.dart';
 import '../wrappers/io_wrapper.dart';
 import '../wrappers/path_provider_wrapper.dart';
+import '../wrappers/services_wrapper.dart';
 
 enum LegacyImporterError {
   invalidZipFile,
@@ -57,6 +59,7 @@ class LegacyImporter {
   static const _keyEndDate = "endDate";
   static const _keyEntries = "entries";
   static const _keyFishingSpot = "fishingSpot";
+  static const _keyFishingSpotId = "fishingSpotId";
   static const _keyFishingSpots = "fishingSpots";
   static const _keyFishLength = "fishLength";
   static const _keyFishOunces = "fishOunces";
@@ -101,6 +104,12 @@ class LegacyImporter {
   final Map<String, File> _images = {};
   final LegacyJsonResult? _legacyJsonResult;
   final VoidCallback? _onFinish;
+  final bool _isStream;
+
+  /// When streaming, trips are received before their catches, so they're kept
+  /// here until every catch is imported. See [_startStream].
+  final List<Trip> _streamedTrips = [];
+  final Map<Id, Trip> _streamedTripsByCatchId = {};
 
   late MeasurementSystem _measurementSystem;
   late MeasurementSystem _weatherSystem;
@@ -112,7 +121,8 @@ class LegacyImporter {
       : _appManager = appManager,
         _zipFile = zipFile,
         _legacyJsonResult = null,
-        _onFinish = null;
+        _onFinish = null,
+        _isStream = false;
 
   LegacyImporter.migrate(
     AppManager appManager,
@@ -120,7 +130,18 @@ class LegacyImporter {
     this._onFinish,
   ])  : _appManager = appManager,
         _zipFile = null,
-        _legacyJsonResult = result;
+        _legacyJsonResult = result,
+        _isStream = false;
+
+  /// Imports legacy data as it's streamed from the platform, rather than
+  /// waiting for all of it to be exported. See [streamLegacyJson].
+  LegacyImporter.stream(
+    AppManager appManager, [
+    this._onFinish,
+  ])  : _appManager = appManager,
+        _zipFile = null,
+        _legacyJsonResult = null,
+        _isStream = true;
 
   AnglerManager get _anglerManager => _appManager.anglerManager;
 
@@ -155,12 +176,16 @@ class LegacyImporter {
   PathProviderWrapper get _pathProviderWrapper =>
       _appManager.pathProviderWrapper;
 
+  ServicesWrapper get _servicesWrapper => _appManager.servicesWrapper;
+
   String get _jsonString => jsonEncode(_json);
 
   LegacyJsonResult? get legacyJsonResult => _legacyJsonResult;
 
   Future<void> start() async {
-    if (_legacyJsonResult == null) {
+    if (_isStream) {
+      await _startStream();
+    } else if (_legacyJsonResult == null) {
       await _startArchive();
     } else {
       await _startMigration();
@@ -174,8 +199,75 @@ class LegacyImporter {
 
     _json = _legacyJsonResult!.json ?? {};
 
-    // Copy all image references into memory.
-    var imagesDir = _ioWrapper.directory(_legacyJsonResult!.imagesPath!);
+    var imagesDir = _loadImages(_legacyJsonResult!.imagesPath!);
+
+    // Reset the 2.0 database and start fresh. If for some reason, the migration
+    // was interrupted (for example, a crash), we don't want to create duplicate
+    // data.
+    await _localDatabaseManager.resetDatabase();
+    await _import();
+
+    // Cleanup old directory and database.
+    await safeDeleteFileSystemEntity(imagesDir);
+    await safeDeleteFileSystemEntity(
+        _ioWrapper.directory(_legacyJsonResult!.databasePath!));
+  }
+
+  Future<void> _startStream() async {
+    Directory? imagesDir;
+
+    var result = await streamLegacyJson(_servicesWrapper, (batch) async {
+      switch (batch.type) {
+        case LegacyJsonBatchType.journal:
+          _json = {_keyJournal: batch.json};
+          imagesDir = _loadImages(batch.imagesPath!);
+
+          // See _startMigration.
+          await _localDatabaseManager.resetDatabase();
+          await _importPreferences();
+          break;
+        case LegacyJsonBatchType.userDefines:
+          // Kept for error reporting, see _jsonString.
+          _json[_keyJournal]?[_keyUserDefines] = batch.json;
+          await _importUserDefines();
+          break;
+        case LegacyJsonBatchType.trips:
+          _streamTrips(batch.json);
+          break;
+        case LegacyJsonBatchType.entries:
+          await _importCatches(batch.json);
+          break;
+      }
+    });
+
+    // No legacy data to migrate.
+    if (result == null) {
+      return;
+    }
+
+    if (result.hasError) {
+      return Future.error(result.errorCode!,
+          StackTrace.fromString(result.errorDescription ?? ""));
+    }
+
+    // Each trip's catches have been counted as they were imported.
+    for (var trip in _streamedTrips) {
+      await _tripManager.addOrUpdate(trip);
+    }
+
+    await _deleteImages();
+
+    // Cleanup old directory and database.
+    if (imagesDir != null) {
+      await safeDeleteFileSystemEntity(imagesDir!);
+    }
+    await safeDeleteFileSystemEntity(
+        _ioWrapper.directory(result.databasePath!));
+  }
+
+  /// Copies all image references in [imagesPath] into memory.
+  Directory _loadImages(String imagesPath) {
+    var imagesDir = _ioWrapper.directory(imagesPath);
     for (var image in imagesDir.listSync()) {
       var name = basename(image.path);
       var path = "${imagesDir.path}/$name";
@@ -188,17 +280,7 @@ class LegacyImporter {
             "Expected File, got ${FileSystemEntity.typeSync(path)} at $path");
       }
     }
-
-    // Reset the 2.0 database and start fresh. If for some reason, the migration
-    // was interrupted (for example, a crash), we don't want to create duplicate
-    // data.
-    await _localDatabaseManager.resetDatabase();
-    await _import();
-
-    // Cleanup old directory and database.
-    await safeDeleteFileSystemEntity(imagesDir);
-    await safeDeleteFileSystemEntity(
-        _ioWrapper.directory(_legacyJsonResult!.databasePath!));
+    return imagesDir;
   }
 
   Future<void> _startArchive() async {
@@ -226,6 +308,22 @@ class LegacyImporter {
   }
 
   Future<void> _import() async {
+    await _importPreferences();
+
+    // Messages are imported first, since they include bait categories, which
+    // need to be imported before baits.
+    await _importMessages(_legacyJsonResult?.messages ?? const {});
+    await _importUserDefines();
+
+    // Catches and trips are always imported last since they reference most
+    // other entities.
+    await _importCatches(_json[_keyJournal][_keyEntries]);
+    await _importTrips(_json[_keyJournal][_keyTrips]);
+
+    await _deleteImages();
+  }
+
+  Future<void> _importPreferences() async {
     if (_json[_keyJournal] == null) {
       return Future.error(LegacyImporterError.missingJournal,
           StackTrace.fromString(_jsonString));
@@ -252,7 +350,9 @@ class LegacyImporter {
     _userPreferenceManager.setAirPressureSystem(_weatherSystem);
     _userPreferenceManager.setAirVisibilitySystem(_weatherSystem);
     _userPreferenceManager.setWindSpeedSystem(_weatherSystem);
+  }
 
+  Future<void> _importUserDefines() async {
     var userDefinesJson = _json[_keyJournal][_keyUserDefines];
     if (userDefinesJson == null || userDefinesJson is! List) {
       return Future.error(LegacyImporterError.missingUserDefines,
@@ -309,18 +409,13 @@ class LegacyImporter {
     await _importMethods(methods);
     await _importSpecies(species);
     await _importWaterClarities(waterClarities);
+  }
 
-    // Catches and trips are always imported last since they reference most
-    // other entities.
-    await _importCatches(_json[_keyJournal][_keyEntries]);
-    await _importTrips(_json[_keyJournal][_keyTrips]);
-
-    // Cleanup old images.
+  /// Cleanup old images.
+  Future<void> _deleteImages() async {
     for (var tmpImg in _images.values) {
       await safeDeleteFileSystemEntity(tmpImg);
     }
-
-    return Future.value();
   }
 
   Future<void> _importBaits(List<dynamic>? baits) async {
@@ -529,6 +624,46 @@ class LegacyImporter {
     }
   }
 
+  /// Imports user defines sent as protobuf messages, which are already in
+  /// their 2.0 form.
+  Future<void> _importMessages(
+      Map<LegacyMessageType, Uint8List> messages) async {
+    for (var entry in messages.entries) {
+      switch (entry.key) {
+        case LegacyMessageType.anglers:
+          await _importMessageList(
+              entry.value, Angler.fromBuffer, _anglerManager.addOrUpdate);
+          break;
+        case LegacyMessageType.baitCategories:
+          await _importMessageList(entry.value, BaitCategory.fromBuffer,
+              _baitCategoryManager.addOrUpdate);
+          break;
+        case LegacyMessageType.methods:
+          await _importMessageList(
+              entry.value, Method.fromBuffer, _methodManager.addOrUpdate);
+          break;
+        case LegacyMessageType.species:
+          await _importMessageList(
+              entry.value, Species.fromBuffer, _speciesManager.addOrUpdate);
+          break;
+        case LegacyMessageType.waterClarities:
+          await _importMessageList(entry.value, WaterClarity.fromBuffer,
+              _waterClarityManager.addOrUpdate);
+          break;
+      }
+    }
+  }
+
+  Future<void> _importMessageList<T extends GeneratedMessage>(
+    Uint8List bytes,
+    T Function(List<int>) fromBuffer,
+    Future<bool> Function(T) addEntity,
+  ) async {
+    for (var message in parseDelimited(bytes, fromBuffer)) {
+      await addEntity(message);
+    }
+  }
+
   Future<void> _importCatches(List<dynamic>? catches) async {
     if (catches == null || catches.isEmpty) {
       return;
@@ -565,11 +700,23 @@ class LegacyImporter {
         _log.w("Bait (${map[_keyBaitUsed]}) not found");
       }
 
-      var bodyOfWater = _bodyOfWaterManager.named(map[_keyLocation]);
-      var fishingSpot = _fishingSpotManager.namedWithBodyOfWater(
-          map[_keyFishingSpot], bodyOfWater?.id);
-      if (fishingSpot == null && isNotEmpty(map[_keyFishingSpot])) {
-        _log.w("Fishing spot (${map[_keyFishingSpot]}) not found");
+      FishingSpot? fishingSpot;
+      if (map.containsKey(_keyFishingSpotId)) {
+        // Compact exports reference fishing spots by ID, which are kept when
+        // fishing spots are imported.
+        String? idString = map[_keyFishingSpotId];
+        var id = isEmpty(idString) ? null : safeParseId(idString!);
+        fishingSpot = id == null ? null : _fishingSpotManager.entity(id);
+        if (fishingSpot == null && isNotEmpty(idString)) {
+          _log.w("Fishing spot ($idString) not found");
+        }
+      } else {
+        var bodyOfWater = _bodyOfWaterManager.named(map[_keyLocation]);
+        fishingSpot = _fishingSpotManager.namedWithBodyOfWater(
+            map[_keyFishingSpot], bodyOfWater?.id);
+        if (fishingSpot == null && isNotEmpty(map[_keyFishingSpot])) {
+          _log.w("Fishing spot (${map[_keyFishingSpot]}) not found");
+        }
       }
 
       var methods = <Method>[];
@@ -703,6 +850,11 @@ class LegacyImporter {
       // Set default properties not tracked in the legacy app.
       cat.timeZone = _timeManager.currentTimeZone;
 
+      var trip = _streamedTripsByCatchId[cat.id];
+      if (trip != null) {
+        _incCatchesPerEntity(trip, cat);
+      }
+
       await _catchManager.addOrUpdate(
         cat,
         imageFiles: images,
@@ -718,35 +870,7 @@ class LegacyImporter {
     }
 
     for (var item in trips) {
-      var map = item as Map<String, dynamic>;
-      var trip = Trip(id: _parseJsonId(map[_keyId]));
-
-      String? name = map[_keyName];
-      if (isNotEmpty(name)) {
-        trip.name = name!;
-      }
-
-      var now = _timeManager.currentDateTime;
-
-      int? startMs = map[_keyStartDate];
-      trip.startTimestamp = Int64(startMs ?? now.millisecondsSinceEpoch);
-
-      int? endMs = map[_keyEndDate];
-      trip.endTimestamp = Int64(endMs ?? now.millisecondsSinceEpoch);
-
-      String? notes = map[_keyNotes];
-      if (isNotEmpty(notes)) {
-        trip.notes = notes!;
-      }
-
-      var catchIds = map[_keyCatches];
-      for (var idString in catchIds) {
-        var id = safeParseId(idString);
-        if (id == null) {
-          continue;
-        }
-        trip.catchIds.add(id);
-      }
+      var trip = _parseTrip(item as Map<String, dynamic>);
 
       // Fetch all catches for this trip so we can fill in the new "catches per
       // entity" fields.
@@ -756,42 +880,97 @@ class LegacyImporter {
       }
 
       for (var cat in catches) {
-        Trips.incCatchesPerBait(trip.catchesPerBait, cat);
-        trip.incCatchesPerSpecies(cat);
-        trip.incCatchesPerFishingSpot(cat);
+        _incCatchesPerEntity(trip, cat);
       }
 
-      var bodyOfWaterIds = map[_keyLocations];
-      for (var idString in bodyOfWaterIds) {
-        var bodyOfWater = _bodyOfWaterManager.entity(_parseJsonId(idString));
-        if (bodyOfWater == null) {
-          _log.w("Body of water not found: $idString");
-          continue;
-        }
-        trip.bodyOfWaterIds.add(bodyOfWater.id);
+      await _tripManager.addOrUpdate(trip);
+    }
+  }
+
+  /// Keeps streamed trips until their catches are imported, since trips are
+  /// streamed first.
+  void _streamTrips(List<dynamic>? trips) {
+    if (trips == null) {
+      return;
+    }
+
+    for (var item in trips) {
+      var trip = _parseTrip(item as Map<String, dynamic>);
+      _streamedTrips.add(trip);
+      for (var id in trip.catchIds) {
+        _streamedTripsByCatchId[id] = trip;
       }
+    }
+  }
 
-      var anglerIds = map[_keyAnglers];
-      for (var idString in anglerIds) {
-        var angler = _anglerManager.entity(safeParseId(idString));
-        if (angler == null) {
-          _log.w("Angler not found: $idString");
-          continue;
-        }
+  /// Parses a legacy trip, without its "catches per entity" fields. See
+  /// [_incCatchesPerEntity].
+  Trip _parseTrip(Map<String, dynamic> map) {
+    var trip = Trip(id: _parseJsonId(map[_keyId]));
+
+    String? name = map[_keyName];
+    if (isNotEmpty(name)) {
+      trip.name = name!;
+    }
+
+    var now = _timeManager.currentDateTime;
+
+    int? startMs = map[_keyStartDate];
+    trip.startTimestamp = Int64(startMs ?? now.millisecondsSinceEpoch);
 
-        // Angler cannot be attached to a catch in the legacy app, so don't
-        // bother iterating catches here.
-        trip.catchesPerAngler.add(Trip_CatchesPerEntity(
-          entityId: angler.id,
-          value: 0,
-        ));
+    int? endMs = map[_keyEndDate];
+    trip.endTimestamp = Int64(endMs ?? now.millisecondsSinceEpoch);
+
+    String? notes = map[_keyNotes];
+    if (isNotEmpty(notes)) {
+      trip.notes = notes!;
+    }
+
+    var catchIds = map[_keyCatches];
+    for (var idString in catchIds) {
+      var id = safeParseId(idString);
+      if (id == null) {
+        continue;
       }
+      trip.catchIds.add(id);
+    }
 
-      // Set default properties not tracked in the legacy app.
-      trip.timeZone = now.locationName;
+    var bodyOfWaterIds = map[_keyLocations];
+    for (var idString in bodyOfWaterIds) {
+      var bodyOfWater = _bodyOfWaterManager.entity(_parseJsonId(idString));
+      if (bodyOfWater == null) {
+        _log.w("Body of water not found: $idString");
+        continue;
+      }
+      trip.bodyOfWaterIds.add(bodyOfWater.id);
+    }
 
-      await _tripManager.addOrUpdate(trip);
+    var anglerIds = map[_keyAnglers];
+    for (var idString in anglerIds) {
+      var angler = _anglerManager.entity(safeParseId(idString));
+      if (angler == null) {
+        _log.w("Angler not found: $idString");
+        continue;
+      }
+
+      // Angler cannot be attached to a catch in the legacy app, so don't
+      // bother iterating catches here.
+      trip.catchesPerAngler.add(Trip_CatchesPerEntity(
+        entityId: angler.id,
+        value: 0,
+      ));
     }
+
+    // Set default properties not tracked in the legacy app.
+    trip.timeZone = now.locationName;
+
+    return trip;
+  }
+
+  void _incCatchesPerEntity(Trip trip, Catch cat) {
+    Trips.incCatchesPerBait(trip.catchesPerBait, cat);
+    trip.incCatchesPerSpecies(cat);
+    trip.incCatchesPerFishingSpot(cat);
   }
 
   Atmosphere _parseWeatherData(Map<String, dynamic> weatherData) {
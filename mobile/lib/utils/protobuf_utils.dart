@@ -129,6 +129,18 @@ Id? safeParseId(String idString) {
   }
 }
 
+/// Reads length-delimited messages from [bytes], where each message is
+/// preceded by its size as a varint.
+List<T> parseDelimited<T extends GeneratedMessage>(
+    List<int> bytes, T Function(List<int>) fromBuffer) {
+  var reader = CodedBufferReader(bytes);
+  var result = <T>[];
+  while (!reader.isAtEnd()) {
+    result.add(fromBuffer(reader.readBytes()));
+  }
+  return result;
+}
+
 /// Returns true if [item] exists in [items], where if [item] is of type
 /// [GeneratedMessage], only the [id] property is checked. For more details
 /// see [indexOfEntityIdOrOther].
@@ -9,4 +9,6 @@ class ServicesWrapper {
       Provider.of<AppManager>(context, listen: false).servicesWrapper;
 
   MethodChannel methodChannel(String name) => MethodChannel(name);
+
+  EventChannel eventChannel(String name) => EventChannel(name);
 }
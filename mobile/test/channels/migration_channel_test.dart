@@ -1,3 +1,8 @@
+import 'dart:convert';
+import 'dart:io';
+import 'dart:typed_data';
+
+import 'package:archive/archive.dart' show getCrc32;
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 import 'package:mobile/channels/migration_channel.dart';
@@ -8,6 +13,7 @@ import '../mocks/mocks.mocks.dart';
 void main() {
   late MockServicesWrapper servicesWrapper;
   late MockMethodChannel methodChannel;
+  late MockEventChannel eventChannel;
 
   setUp(() {
     servicesWrapper = MockServicesWrapper();
@@ -15,17 +21,20 @@ void main() {
     methodChannel = MockMethodChannel();
     when(servicesWrapper.methodChannel(any)).thenReturn(methodChannel);
 
+    eventChannel = MockEventChannel();
+    when(servicesWrapper.eventChannel(any)).thenReturn(eventChannel);
+
     var wrapper = MockServicesWrapper();
     when(wrapper.methodChannel(any)).thenReturn(methodChannel);
   });
 
   test("No legacy data to migrate returns null", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value(null));
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value(null));
     expect(await legacyJson(servicesWrapper), isNull);
   });
 
   test("Channel result missing database path", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value({
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
           "img": "path/to/images",
           "json": "{}",
         }));
@@ -35,7 +44,7 @@ void main() {
   });
 
   test("Channel result missing images path", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value({
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
           "db": "path/to/database",
           "json": "{}",
         }));
@@ -45,7 +54,7 @@ void main() {
   });
 
   test("Channel result missing json", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value({
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
           "img": "path/to/images",
           "db": "path/to/database",
         }));
@@ -55,7 +64,7 @@ void main() {
   });
 
   test("Invalid JSON", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value({
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
           "img": "path/to/images",
           "db": "path/to/database",
           "json": "bad JSON string",
@@ -63,10 +72,11 @@ void main() {
     var result = await legacyJson(servicesWrapper);
     expect(result, isNotNull);
     expect(result!.errorCode, LegacyJsonErrorCode.invalidJson);
+    expect(result.errorDescription, "bad JSON string");
   });
 
   test("Platform exception", () async {
-    when(methodChannel.invokeMethod(any))
+    when(methodChannel.invokeMethod(any, any))
         .thenAnswer(((_) => throw PlatformException(code: "Test")));
     var result = await legacyJson(servicesWrapper);
     expect(result, isNotNull);
@@ -74,7 +84,7 @@ void main() {
   });
 
   test("Successful case", () async {
-    when(methodChannel.invokeMethod(any)).thenAnswer((_) => Future.value({
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
           "img": "path/to/images",
           "db": "path/to/database",
           "json": "{}",
@@ -82,8 +92,444 @@ void main() {
     var result = await legacyJson(servicesWrapper);
     expect(result, isNotNull);
     expect(result!.errorCode, isNull);
+    expect(result.errorDescription, isNull);
     expect(result.imagesPath, "path/to/images");
     expect(result.databasePath, "path/to/database");
     expect(result.json, isNotNull);
   });
+
+  test("String dictionary, compact schema and protobuf are requested", () async {
+    when(methodChannel.invokeMethod(any, any))
+        .thenAnswer((_) => Future.value(null));
+    await legacyJson(servicesWrapper);
+
+    var result = verify(methodChannel.invokeMethod(any, captureAny));
+    result.called(1);
+    expect(result.captured.first, {
+      "stringDictionary": true,
+      "file": true,
+      "schemaVersion": 2,
+      "protobuf": true,
+    });
+  });
+
+  test("Protobuf messages are passed through by type", () async {
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+          "img": "path/to/images",
+          "db": "path/to/database",
+          "json": "{}",
+          "protobuf": {
+            "species": Uint8List.fromList([1, 2]),
+            "anglers": Uint8List.fromList([3]),
+            "unknown": Uint8List.fromList([4]),
+          },
+        }));
+
+    var result = await legacyJson(servicesWrapper);
+    expect(result, isNotNull);
+    expect(result!.errorCode, isNull);
+    expect(result.messages, {
+      LegacyMessageType.species: [1, 2],
+      LegacyMessageType.anglers: [3],
+    });
+  });
+
+  test("Platforms without protobuf messages send none", () async {
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+          "img": "path/to/images",
+          "db": "path/to/database",
+          "json": "{}",
+        }));
+
+    var result = await legacyJson(servicesWrapper);
+    expect(result, isNotNull);
+    expect(result!.messages, isEmpty);
+  });
+
+  test("String dictionary indexes are expanded", () async {
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+          "img": "path/to/images",
+          "db": "path/to/database",
+          "json": """
+          {
+            "journal": {
+              "entries": [
+                {
+                  "fishSpecies": 1,
+                  "fishQuantity": 2,
+                  "fishingMethodNames": [2, 3],
+                  "journal": 0,
+                  "weatherData": {
+                    "skyConditions": 4,
+                    "temperature": 3
+                  }
+                }
+              ]
+            },
+            "strings": ["Journal", "Bass", "Casting", "Shore", "Clear"],
+            "stringKeys": [
+              "fishSpecies",
+              "fishingMethodNames",
+              "journal",
+              "skyConditions"
+            ]
+          }
+          """,
+        }));
+
+    var result = await legacyJson(servicesWrapper);
+    expect(result, isNotNull);
+    expect(result!.errorCode, isNull);
+    expect(result.json, {
+      "journal": {
+        "entries": [
+          {
+            "fishSpecies": "Bass",
+            "fishQuantity": 2,
+            "fishingMethodNames": ["Casting", "Shore"],
+            "journal": "Journal",
+            "weatherData": {
+              "skyConditions": "Clear",
+              "temperature": 3,
+            },
+          },
+        ],
+      },
+    });
+  });
+
+  test("String dictionary index out of range", () async {
+    when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+          "img": "path/to/images",
+          "db": "path/to/database",
+          "json": """
+          {
+            "journal": {"entries": [{"fishSpecies": 5}]},
+            "strings": ["Bass"],
+            "stringKeys": ["fishSpecies"]
+          }
+          """,
+        }));
+
+    var result = await legacyJson(servicesWrapper);
+    expect(result, isNotNull);
+    expect(result!.errorCode, LegacyJsonErrorCode.invalidJson);
+  });
+
+  test("JSON without a string dictionary is unchanged", () {
+    expect(
+      expandLegacyStrings({
+        "journal": {"fishSpecies": 1},
+      }),
+      {
+        "journal": {"fishSpecies": 1},
+      },
+    );
+  });
+
+  group("File results", () {
+    late Directory tmpDir;
+
+    setUp(() {
+      tmpDir = Directory.systemTemp.createTempSync("migration_channel_test");
+    });
+
+    tearDown(() {
+      if (tmpDir.existsSync()) {
+        tmpDir.deleteSync(recursive: true);
+      }
+    });
+
+    File writeJsonFile(String json) {
+      var file = File("${tmpDir.path}/legacy.json");
+      file.writeAsBytesSync(utf8.encode(json));
+      return file;
+    }
+
+    test("File is read and decoded, and kept for reuse", () async {
+      var file = writeJsonFile("""
+      {
+        "journal": {"entries": [{"fishSpecies": 0}]},
+        "strings": ["Bass"],
+        "stringKeys": ["fishSpecies"]
+      }
+      """);
+      var bytes = file.readAsBytesSync();
+
+      when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+            "img": "path/to/images",
+            "db": "path/to/database",
+            "file": file.path,
+            "size": bytes.length,
+            "checksum": getCrc32(bytes),
+          }));
+
+      var result = await legacyJson(servicesWrapper);
+      expect(result, isNotNull);
+      expect(result!.errorCode, isNull);
+      expect(result.json, {
+        "journal": {
+          "entries": [
+            {"fishSpecies": "Bass"},
+          ],
+        },
+      });
+      expect(file.existsSync(), isTrue);
+    });
+
+    test("File with the wrong checksum", () async {
+      var file = writeJsonFile("{}");
+      var bytes = file.readAsBytesSync();
+
+      when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+            "img": "path/to/images",
+            "db": "path/to/database",
+            "file": file.path,
+            "size": bytes.length,
+            "checksum": getCrc32(bytes) + 1,
+          }));
+
+      var result = await legacyJson(servicesWrapper);
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.invalidFile);
+      expect(result.json, isNull);
+    });
+
+    test("File with the wrong size", () async {
+      var file = writeJsonFile("{}");
+      var bytes = file.readAsBytesSync();
+
+      when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+            "img": "path/to/images",
+            "db": "path/to/database",
+            "file": file.path,
+            "size": bytes.length + 1,
+            "checksum": getCrc32(bytes),
+          }));
+
+      var result = await legacyJson(servicesWrapper);
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.invalidFile);
+    });
+
+    test("Missing file", () async {
+      when(methodChannel.invokeMethod(any, any)).thenAnswer((_) => Future.value({
+            "img": "path/to/images",
+            "db": "path/to/database",
+            "file": "${tmpDir.path}/missing.json",
+            "size": 2,
+            "checksum": 0,
+          }));
+
+      var result = await legacyJson(servicesWrapper);
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.invalidFile);
+    });
+  });
+
+  group("Byte results", () {
+    Map<String, dynamic> bytesResult(String json, {bool gzipped = true}) {
+      var bytes = utf8.encode(json);
+      return {
+        "img": "path/to/images",
+        "db": "path/to/database",
+        "bytes": Uint8List.fromList(gzipped ? gzip.encode(bytes) : bytes),
+        "gzip": gzipped,
+        "size": bytes.length,
+      };
+    }
+
+    test("Bytes are requested in memory", () async {
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(null));
+      await legacyJson(servicesWrapper, inMemory: true);
+
+      var result = verify(methodChannel.invokeMethod(any, captureAny));
+      result.called(1);
+      expect(result.captured.first, {
+        "stringDictionary": true,
+        "schemaVersion": 2,
+        "protobuf": true,
+        "bytes": true,
+        "gzip": true,
+      });
+    });
+
+    test("Gzipped bytes are inflated and decoded", () async {
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(bytesResult("""
+      {
+        "journal": {"entries": [{"fishSpecies": 0}]},
+        "strings": ["Bäss"],
+        "stringKeys": ["fishSpecies"]
+      }
+      """)));
+
+      var result = await legacyJson(servicesWrapper, inMemory: true);
+      expect(result, isNotNull);
+      expect(result!.errorCode, isNull);
+      expect(result.json, {
+        "journal": {
+          "entries": [
+            {"fishSpecies": "Bäss"},
+          ],
+        },
+      });
+    });
+
+    test("Uncompressed bytes are decoded", () async {
+      when(methodChannel.invokeMethod(any, any)).thenAnswer(
+          (_) => Future.value(bytesResult("""{"journal": {}}""", gzipped: false)));
+
+      var result = await legacyJson(servicesWrapper, inMemory: true);
+      expect(result, isNotNull);
+      expect(result!.errorCode, isNull);
+      expect(result.json, {"journal": {}});
+    });
+
+    test("Bytes with the wrong size", () async {
+      var response = bytesResult("""{"journal": {}}""");
+      response["size"] = response["size"] - 1;
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(response));
+
+      var result = await legacyJson(servicesWrapper, inMemory: true);
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.invalidJson);
+      expect(result.json, isNull);
+    });
+  });
+
+  group("Streamed results", () {
+    var journalEvent = {
+      "type": "journal",
+      "json": """{"name": "Test"}""",
+      "db": "path/to/database",
+      "img": "path/to/images",
+    };
+
+    void stubEvents(Stream<dynamic> events) {
+      when(eventChannel.receiveBroadcastStream(any))
+          .thenAnswer((_) => events);
+    }
+
+    test("No legacy data to migrate returns null", () async {
+      stubEvents(const Stream.empty());
+      expect(await streamLegacyJson(servicesWrapper, (_) async {}), isNull);
+    });
+
+    test("Compact schema is requested", () async {
+      stubEvents(const Stream.empty());
+      await streamLegacyJson(servicesWrapper, (_) async {});
+
+      var result = verify(eventChannel.receiveBroadcastStream(captureAny));
+      result.called(1);
+      expect(result.captured.first, {"schemaVersion": 2});
+    });
+
+    test("Each batch is acknowledged after it's handled", () async {
+      var calls = <String>[];
+      when(methodChannel.invokeMethod(any, any)).thenAnswer((invocation) {
+        calls.add(invocation.positionalArguments.first);
+        return Future.value(null);
+      });
+
+      stubEvents(Stream.fromIterable([
+        journalEvent,
+        {"type": "userDefines", "json": "[]"},
+        {"type": "trips", "json": """[{"name": "Trip"}]"""},
+        {"type": "entries", "json": """[{"fishSpecies": "Bass"}]"""},
+      ]));
+
+      var batches = <LegacyJsonBatch>[];
+      var result = await streamLegacyJson(servicesWrapper, (batch) async {
+        // Handling a batch asynchronously must still finish before the ack.
+        await Future.delayed(const Duration(milliseconds: 1));
+        calls.add(batch.type.name);
+        batches.add(batch);
+      });
+
+      expect(result, isNotNull);
+      expect(result!.errorCode, isNull);
+      expect(result.databasePath, "path/to/database");
+      expect(result.imagesPath, "path/to/images");
+      expect(result.json, isNull);
+
+      expect(calls, [
+        "journal",
+        "ackLegacyBatch",
+        "userDefines",
+        "ackLegacyBatch",
+        "trips",
+        "ackLegacyBatch",
+        "entries",
+        "ackLegacyBatch",
+      ]);
+
+      expect(batches[0].json, {"name": "Test"});
+      expect(batches[0].databasePath, "path/to/database");
+      expect(batches[0].imagesPath, "path/to/images");
+      expect(batches[1].json, []);
+      expect(batches[1].databasePath, isNull);
+      expect(batches[2].json, [
+        {"name": "Trip"},
+      ]);
+      expect(batches[3].json, [
+        {"fishSpecies": "Bass"},
+      ]);
+    });
+
+    test("Journal batch missing paths", () async {
+      stubEvents(Stream.fromIterable([
+        {"type": "journal", "json": "{}"},
+      ]));
+
+      var result = await streamLegacyJson(servicesWrapper, (_) async {});
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.missingData);
+    });
+
+    test("Unknown batch type", () async {
+      stubEvents(Stream.fromIterable([
+        {"type": "unknown", "json": "{}"},
+      ]));
+
+      var result = await streamLegacyJson(servicesWrapper, (_) async {});
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.missingData);
+    });
+
+    test("Invalid JSON", () async {
+      stubEvents(Stream.fromIterable([
+        {...journalEvent, "json": "bad JSON string"},
+      ]));
+
+      var called = false;
+      var result =
+          await streamLegacyJson(servicesWrapper, (_) async => called = true);
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.invalidJson);
+      expect(called, isFalse);
+    });
+
+    test("Platform exception", () async {
+      stubEvents(Stream.error(PlatformException(code: "Test")));
+
+      var result = await streamLegacyJson(servicesWrapper, (_) async {});
+      expect(result, isNotNull);
+      expect(result!.errorCode, LegacyJsonErrorCode.platformException);
+    });
+
+    test("Batch handler errors are rethrown", () async {
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(null));
+      stubEvents(Stream.fromIterable([journalEvent]));
+
+      await expectLater(
+        streamLegacyJson(servicesWrapper, (_) => Future.error("Test")),
+        throwsA("Test"),
+      );
+      verifyNever(methodChannel.invokeMethod(any, any));
+    });
+  });
 }
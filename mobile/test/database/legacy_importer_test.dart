@@ -1,4 +1,5 @@
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter_test/flutter_test.dart';
 import 'package:intl/intl.dart';
@@ -19,6 +20,7 @@ import 'package:mobile/utils/protobuf_utils.dart';
 import 'package:mobile/water_clarity_manager.dart';
 import 'package:mockito/mockito.dart';
 import 'package:path/path.dart' as path;
+import 'package:protobuf/protobuf.dart';
 import 'package:timezone/timezone.dart';
 
 import '../mocks/mocks.dart';
@@ -1146,6 +1148,315 @@ void main() {
       verify(databaseDir.deleteSync(recursive: true)).called(1);
       expect(called, isTrue);
     });
+
+    test("Compact catches reference fishing spots by ID", () async {
+      var imagesDir = MockDirectory();
+      when(imagesDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(imagesDir));
+      when(imagesDir.existsSync()).thenReturn(true);
+      when(imagesDir.listSync()).thenReturn([]);
+      when(ioWrapper.directory("test/images")).thenReturn(imagesDir);
+
+      var databaseDir = MockDirectory();
+      when(databaseDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(databaseDir));
+      when(databaseDir.existsSync()).thenReturn(true);
+      when(ioWrapper.directory("test/database")).thenReturn(databaseDir);
+
+      var fishingSpotId = randomId();
+      var importer = LegacyImporter.migrate(
+        appManager.app,
+        LegacyJsonResult(
+          databasePath: "test/database",
+          imagesPath: "test/images",
+          json: {
+            "journal": {
+              "userDefines": [
+                {
+                  "name": "Locations",
+                  "locations": [
+                    {
+                      "name": "Lake",
+                      "id": randomId().uuid,
+                      "fishingSpots": [
+                        {
+                          "name": "Dock",
+                          "id": fishingSpotId.uuid,
+                          "coordinates": {
+                            "latitude": 50.943077,
+                            "longitude": -114.013481,
+                          },
+                        },
+                      ],
+                    },
+                  ],
+                },
+              ],
+              "entries": [
+                {
+                  "id": randomId().uuid,
+                  "date": "10-11-2017_5-19_PM_19.420",
+                  "fishingSpotId": fishingSpotId.uuid,
+                  "fishingMethodNames": [],
+                  "images": [],
+                },
+                {
+                  "id": randomId().uuid,
+                  "date": "10-11-2017_5-20_PM_19.420",
+                  "fishingSpotId": "",
+                  "fishingMethodNames": [],
+                  "images": [],
+                },
+              ],
+            },
+            "schemaVersion": 2,
+          },
+        ),
+      );
+      await importer.start();
+
+      var catches = catchManager.list();
+      expect(catches.length, 2);
+      expect(catches.where((cat) => cat.hasFishingSpotId()).length, 1);
+      expect(
+        fishingSpotManager
+            .entity(catches.firstWhere((cat) => cat.hasFishingSpotId())
+                .fishingSpotId)!
+            .name,
+        "Dock",
+      );
+    });
+
+    test("Protobuf messages are imported before JSON user defines", () async {
+      var imagesDir = MockDirectory();
+      when(imagesDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(imagesDir));
+      when(imagesDir.existsSync()).thenReturn(true);
+      when(imagesDir.listSync()).thenReturn([]);
+      when(ioWrapper.directory("test/images")).thenReturn(imagesDir);
+
+      var databaseDir = MockDirectory();
+      when(databaseDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(databaseDir));
+      when(databaseDir.existsSync()).thenReturn(true);
+      when(ioWrapper.directory("test/database")).thenReturn(databaseDir);
+
+      var baitCategory = BaitCategory()
+        ..id = randomId()
+        ..name = "Live";
+      var species = Species()
+        ..id = randomId()
+        ..name = "Bass";
+
+      var importer = LegacyImporter.migrate(
+        appManager.app,
+        LegacyJsonResult(
+          databasePath: "test/database",
+          imagesPath: "test/images",
+          json: {
+            "journal": {
+              "userDefines": [
+                {
+                  "name": "Baits",
+                  "baits": [
+                    {
+                      "name": "Minnow",
+                      "id": randomId().uuid,
+                      "baitCategory": baitCategory.id.uuid,
+                    },
+                  ],
+                },
+              ],
+            },
+          },
+          messages: {
+            LegacyMessageType.baitCategories: _delimited([baitCategory]),
+            LegacyMessageType.species: _delimited([species]),
+          },
+        ),
+      );
+      await importer.start();
+
+      expect(baitCategoryManager.entity(baitCategory.id), baitCategory);
+      expect(speciesManager.entity(species.id), species);
+
+      var baits = baitManager.list();
+      expect(baits.length, 1);
+      expect(baits.first.baitCategoryId, baitCategory.id);
+    });
+
+    test("Streamed migration imports each batch and deletes old data",
+        () async {
+      var imagesDir = MockDirectory();
+      when(imagesDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(imagesDir));
+      when(imagesDir.existsSync()).thenReturn(true);
+      when(imagesDir.listSync()).thenReturn([]);
+      when(ioWrapper.directory("test/images")).thenReturn(imagesDir);
+
+      var databaseDir = MockDirectory();
+      when(databaseDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(databaseDir));
+      when(databaseDir.existsSync()).thenReturn(true);
+      when(ioWrapper.directory("test/database")).thenReturn(databaseDir);
+
+      var methodChannel = MockMethodChannel();
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(null));
+      when(appManager.servicesWrapper.methodChannel(any))
+          .thenReturn(methodChannel);
+
+      var eventChannel = MockEventChannel();
+      when(eventChannel.receiveBroadcastStream(any))
+          .thenAnswer((_) => Stream.fromIterable([
+                {
+                  "type": "journal",
+                  "json": """{"name": "Test", "measurementSystem": 1}""",
+                  "db": "test/database",
+                  "img": "test/images",
+                },
+                {
+                  "type": "userDefines",
+                  "json": """
+                  [
+                    {
+                      "name": "Anglers",
+                      "anglers": [{"name": "Cohen", "id": "${randomId().uuid}"}]
+                    }
+                  ]
+                  """,
+                },
+              ]));
+      when(appManager.servicesWrapper.eventChannel(any))
+          .thenReturn(eventChannel);
+
+      var called = false;
+      var importer = LegacyImporter.stream(appManager.app, () => called = true);
+      await importer.start();
+
+      expect(anglerManager.entityCount, 1);
+      verify(appManager.userPreferenceManager
+              .setCatchLengthSystem(MeasurementSystem.metric))
+          .called(1);
+      verify(methodChannel.invokeMethod("ackLegacyBatch", any)).called(2);
+      verify(imagesDir.deleteSync(recursive: true)).called(1);
+      verify(databaseDir.deleteSync(recursive: true)).called(1);
+      expect(called, isTrue);
+    });
+
+    test("Streamed migration without legacy data does nothing", () async {
+      when(appManager.servicesWrapper.methodChannel(any))
+          .thenReturn(MockMethodChannel());
+
+      var eventChannel = MockEventChannel();
+      when(eventChannel.receiveBroadcastStream(any))
+          .thenAnswer((_) => const Stream.empty());
+      when(appManager.servicesWrapper.eventChannel(any))
+          .thenReturn(eventChannel);
+
+      await LegacyImporter.stream(appManager.app).start();
+      verifyNever(appManager.localDatabaseManager.resetDatabase());
+    });
+
+    test("Streamed trips count catches imported after them", () async {
+      var imagesDir = MockDirectory();
+      when(imagesDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(imagesDir));
+      when(imagesDir.existsSync()).thenReturn(true);
+      when(imagesDir.listSync()).thenReturn([]);
+      when(ioWrapper.directory("test/images")).thenReturn(imagesDir);
+
+      var databaseDir = MockDirectory();
+      when(databaseDir.deleteSync(recursive: true))
+          .thenAnswer((_) => Future.value(databaseDir));
+      when(databaseDir.existsSync()).thenReturn(true);
+      when(ioWrapper.directory("test/database")).thenReturn(databaseDir);
+
+      var methodChannel = MockMethodChannel();
+      when(methodChannel.invokeMethod(any, any))
+          .thenAnswer((_) => Future.value(null));
+      when(appManager.servicesWrapper.methodChannel(any))
+          .thenReturn(methodChannel);
+
+      var tripId = randomId();
+      var catchId1 = randomId();
+      var catchId2 = randomId();
+      var eventChannel = MockEventChannel();
+      when(eventChannel.receiveBroadcastStream(any))
+          .thenAnswer((_) => Stream.fromIterable([
+                {
+                  "type": "journal",
+                  "json": """{"name": "Test"}""",
+                  "db": "test/database",
+                  "img": "test/images",
+                },
+                {
+                  "type": "userDefines",
+                  "json": """
+                  [
+                    {
+                      "name": "Species",
+                      "species": [{"name": "Bass", "id": "${randomId().uuid}"}]
+                    }
+                  ]
+                  """,
+                },
+                {
+                  "type": "trips",
+                  "json": """
+                  [
+                    {
+                      "id": "${tripId.uuid}",
+                      "name": "Trip",
+                      "catches": ["${catchId1.uuid}", "${catchId2.uuid}"],
+                      "locations": [],
+                      "anglers": []
+                    }
+                  ]
+                  """,
+                },
+                {
+                  "type": "entries",
+                  "json": """
+                  [
+                    {
+                      "id": "${catchId1.uuid}",
+                      "date": "10-11-2017_5-19_PM_19.420",
+                      "fishSpecies": "Bass",
+                      "fishingMethodNames": [],
+                      "images": []
+                    }
+                  ]
+                  """,
+                },
+                {
+                  "type": "entries",
+                  "json": """
+                  [
+                    {
+                      "id": "${catchId2.uuid}",
+                      "date": "10-11-2017_5-20_PM_19.420",
+                      "fishSpecies": "Bass",
+                      "fishingMethodNames": [],
+                      "images": []
+                    }
+                  ]
+                  """,
+                },
+              ]));
+      when(appManager.servicesWrapper.eventChannel(any))
+          .thenReturn(eventChannel);
+
+      await LegacyImporter.stream(appManager.app).start();
+
+      expect(catchManager.entityCount, 2);
+      expect(tripManager.entityCount, 1);
+
+      var trip = tripManager.entity(tripId)!;
+      expect(trip.catchIds, [catchId1, catchId2]);
+      expect(trip.catchesPerSpecies.length, 1);
+      expect(trip.catchesPerSpecies.first.value, 2);
+    });
   });
 
   group("Importing Android trips", () {
@@ -1319,3 +1630,14 @@ void main() {
     });
   });
 }
+
+Uint8List _delimited(List<GeneratedMessage> messages) {
+  var writer = CodedBufferWriter();
+  for (var message in messages) {
+    var bytes = message.writeToBuffer();
+    writer
+      ..writeInt32NoTag(bytes.length)
+      ..writeRawBytes(bytes);
+  }
+  return writer.toBuffer();
+}
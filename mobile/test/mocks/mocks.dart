@@ -171,6 +171,7 @@ Trip_CatchesPerEntity newInputItemShim(dynamic pickerItem) =>
 @GenerateMocks([EntitlementInfo])
 @GenerateMocks([EntitlementInfos])
 @GenerateMocks([], customMocks: [MockSpec<EntityListener>()])
+@GenerateMocks([EventChannel])
 @GenerateMocks([FileSystemEntity])
 @GenerateMocks([LegacyImporter])
 @GenerateMocks([LogInResult])
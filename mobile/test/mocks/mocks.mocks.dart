@@ -1659,6 +1659,16 @@ class _FakeWidget_144 extends _i1.SmartFake implements _i63.Widget {
       super.toString();
 }
 
+class _FakeEventChannel_145 extends _i1.SmartFake implements _i71.EventChannel {
+  _FakeEventChannel_145(
+    Object parent,
+    Invocation parentInvocation,
+  ) : super(
+          parent,
+          parentInvocation,
+        );
+}
+
 /// A class which mocks [AnglerManager].
 ///
 /// See the documentation for Mockito's code generation for more information.
@@ -15912,6 +15922,21 @@ class MockServicesWrapper extends _i1.Mock implements _i51.ServicesWrapper {
           ),
         ),
       ) as _i71.MethodChannel);
+
+  @override
+  _i71.EventChannel eventChannel(String? name) => (super.noSuchMethod(
+        Invocation.method(
+          #eventChannel,
+          [name],
+        ),
+        returnValue: _FakeEventChannel_145(
+          this,
+          Invocation.method(
+            #eventChannel,
+            [name],
+          ),
+        ),
+      ) as _i71.EventChannel);
 }
 
 /// A class which mocks [SharedPreferencesWrapper].
@@ -17424,6 +17449,52 @@ class MockEntityListener<T> extends _i1.Mock implements _i76.EntityListener<T> {
       );
 }
 
+/// A class which mocks [EventChannel].
+///
+/// See the documentation for Mockito's code generation for more information.
+class MockEventChannel extends _i1.Mock implements _i71.EventChannel {
+  MockEventChannel() {
+    _i1.throwOnMissingStub(this);
+  }
+
+  @override
+  String get name => (super.noSuchMethod(
+        Invocation.getter(#name),
+        returnValue: _i75.dummyValue<String>(
+          this,
+          Invocation.getter(#name),
+        ),
+      ) as String);
+
+  @override
+  _i71.MethodCodec get codec => (super.noSuchMethod(
+        Invocation.getter(#codec),
+        returnValue: _FakeMethodCodec_132(
+          this,
+          Invocation.getter(#codec),
+        ),
+      ) as _i71.MethodCodec);
+
+  @override
+  _i71.BinaryMessenger get binaryMessenger => (super.noSuchMethod(
+        Invocation.getter(#binaryMessenger),
+        returnValue: _FakeBinaryMessenger_133(
+          this,
+          Invocation.getter(#binaryMessenger),
+        ),
+      ) as _i71.BinaryMessenger);
+
+  @override
+  _i2.Stream<dynamic> receiveBroadcastStream([dynamic arguments]) =>
+      (super.noSuchMethod(
+        Invocation.method(
+          #receiveBroadcastStream,
+          [arguments],
+        ),
+        returnValue: _i2.Stream<dynamic>.empty(),
+      ) as _i2.Stream<dynamic>);
+}
+
 /// A class which mocks [FileSystemEntity].
 ///
 /// See the documentation for Mockito's code generation for more information.
@@ -4,6 +4,7 @@ import 'package:flutter_test/flutter_test.dart';
 import 'package:mobile/model/gen/anglerslog.pb.dart';
 import 'package:mobile/utils/protobuf_utils.dart';
 import 'package:mockito/mockito.dart';
+import 'package:protobuf/protobuf.dart';
 import 'package:timezone/timezone.dart';
 import 'package:uuid/uuid.dart';
 
@@ -272,6 +273,31 @@ void main() {
     });
   });
 
+  group("parseDelimited", () {
+    test("Empty input", () {
+      expect(parseDelimited([], Species.fromBuffer), isEmpty);
+    });
+
+    test("Messages are read in order", () {
+      var species = [
+        Species(id: randomId(), name: "Bass"),
+        Species(id: randomId(), name: "Pike" * 40),
+        Species(),
+      ];
+
+      var bytes = <int>[];
+      for (var message in species) {
+        var buffer = message.writeToBuffer();
+        var writer = CodedBufferWriter()..writeInt32NoTag(buffer.length);
+        bytes
+          ..addAll(writer.toBuffer())
+          ..addAll(buffer);
+      }
+
+      expect(parseDelimited(bytes, Species.fromBuffer), species);
+    });
+  });
+
   group("Measurements", () {
     testWidgets("displayValue without units", (tester) async {
       var context = await buildContext(tester);